@@ -0,0 +1,132 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Смешанная нагрузка чтения и записи из 16 потоков: сравнение пула по умолчанию с профилем
+ * pool (фиксированное число соединений, ограниченное ожидание). Размер пула и кеш запросов H2
+ * в обоих случаях одинаковые, из application.properties. После прогона печатаются перцентили
+ * времени ожидания соединения hikaricp.connections.acquire.
+ * Запуск: mvn -Pbenchmarks compile exec:exec -Djmh.args="ConcurrentLoadBenchmarks"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConcurrentLoadBenchmarks {
+
+    private static final int USERS = 100_000;
+
+    @Param({"default", "pool"})
+    private String profile;
+
+    private ConfigurableApplicationContext context;
+    private FilmLikeStorage filmLikeStorage;
+    private FriendshipStorage friendshipStorage;
+    private FeedStorage feedStorage;
+    private DataGenerator.Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(profile)
+                .run("--spring.datasource.url=jdbc:h2:mem:load-" + profile + ";DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.zalando.logbook=WARN",
+                        "--filmorate.feed.write-mode=async");
+
+        filmLikeStorage = context.getBean(FilmLikeStorage.class);
+        friendshipStorage = context.getBean(FriendshipStorage.class);
+        feedStorage = context.getBean(FeedStorage.class);
+
+        dataset = context.getBean(DataGenerator.class).generate(DataGenerator.Settings.forUsers(USERS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reportConnectionAcquire();
+        context.close();
+    }
+
+    // накоплено за весь прогон вместе с разминкой и генерацией данных
+    private void reportConnectionAcquire() {
+        Timer acquire = context.getBean(MeterRegistry.class).find("hikaricp.connections.acquire").timer();
+        if (acquire == null) {
+            System.out.println("Метрика hikaricp.connections.acquire не найдена");
+            return;
+        }
+
+        HistogramSnapshot snapshot = acquire.takeSnapshot();
+        StringBuilder report = new StringBuilder(String.format(
+                "Ожидание соединения, профиль %s: %d получений, среднее %.3f мс, максимум %.3f мс",
+                profile, snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS), snapshot.max(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            report.append(String.format(", p%s %.3f мс", percentile.percentile() * 100,
+                    percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        System.out.println(report);
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    // девять чтений на одну пару лайк/отмена лайка
+    @Benchmark
+    public void mixed(Ids ids, Blackhole blackhole) {
+        long userId = dataset.userIds()[ids.random.nextInt(dataset.userIds().length)];
+
+        switch (ids.random.nextInt(10)) {
+            case 0 -> {
+                long filmId = dataset.filmIds()[ids.random.nextInt(dataset.filmIds().length)];
+                filmLikeStorage.addLike(filmId, userId);
+                filmLikeStorage.removeLike(filmId, userId);
+            }
+            case 1, 2, 3 -> blackhole.consume(filmLikeStorage.getPopularFilms(10L, null, null));
+            case 4, 5 -> blackhole.consume(friendshipStorage.getFriends(userId));
+            case 6, 7 -> blackhole.consume(feedStorage.getUserFeed(userId));
+            default -> blackhole.consume(filmLikeStorage.getRecommendations(userId));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.mappers.GenreRowMappers;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.FilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Жанры для страницы из ста фильмов при разном размере справочника жанров: прежний способ
+ * (для каждого фильма id жанров, весь справочник и фильтр через List.contains), нынешний
+ * по одному фильму и нынешний одной пачкой на страницу.
+ * Запуск: mvn -Pbenchmarks compile exec:exec -Djmh.args="GenreResolutionBenchmarks"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GenreResolutionBenchmarks {
+
+    private static final int USERS = 10_000;
+    private static final int PAGE = 100;
+
+    @Param({"20", "200", "2000"})
+    private int genres;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private GenreRowMappers genreRowMappers;
+    private FilmGenreStorage filmGenreStorage;
+    private DataGenerator.Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:genres-" + genres + ";DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.zalando.logbook=WARN",
+                        "--filmorate.feed.write-mode=sync");
+
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        genreRowMappers = context.getBean(GenreRowMappers.class);
+        filmGenreStorage = context.getBean(FilmGenreStorage.class);
+
+        dataset = context.getBean(DataGenerator.class)
+                .generate(DataGenerator.Settings.forUsers(USERS).withGenres(genres));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // случайная страница подряд идущих фильмов, своя у каждого потока
+    @State(Scope.Thread)
+    public static class Page {
+
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        List<Long> next(GenreResolutionBenchmarks benchmarks) {
+            int[] filmIds = benchmarks.dataset.filmIds();
+            int from = random.nextInt(filmIds.length - PAGE);
+            return Arrays.stream(filmIds, from, from + PAGE).mapToObj(Long::valueOf).toList();
+        }
+    }
+
+    @Benchmark
+    public List<List<Genre>> legacyPerFilm(Page page) {
+        List<List<Genre>> result = new ArrayList<>();
+        for (Long filmId : page.next(this)) {
+            List<Long> genreIds = jdbcTemplate.queryForList("SELECT genre_id FROM film_genre WHERE film_id = ?",
+                    Long.class, filmId);
+            List<Genre> allGenres = jdbcTemplate.query("SELECT id, name FROM genres",
+                    genreRowMappers::mapRowToGenre);
+            result.add(allGenres.stream().filter(genre -> genreIds.contains(genre.getId())).toList());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<List<Genre>> perFilm(Page page) {
+        List<List<Genre>> result = new ArrayList<>();
+        for (Long filmId : page.next(this)) {
+            result.add(filmGenreStorage.getListGenreFromDbGenres(filmId));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<Long, List<Genre>> batch(Page page) {
+        return filmGenreStorage.getGenresByFilmIds(page.next(this));
+    }
+}
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пересечения лайков и друзей у «тяжёлых» пользователей: двое пользователей получают degree
+ * лайков и degree друзей поверх обычного набора данных. Рекомендации обычному пользователю
+ * показывают, во что обходятся такие соседи при поиске похожих.
+ * Запуск: mvn -Pbenchmarks compile exec:exec -Djmh.args="HeavyUserBenchmarks"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HeavyUserBenchmarks {
+
+    // фильмов и пользователей хватает, чтобы у тяжёлых пользователей было по 10 тысяч лайков и друзей
+    private static final DataGenerator.Settings SETTINGS =
+            new DataGenerator.Settings(20_000, 12_000, 20, 600, 10, 10, 24_000, 5, 1.0, 42);
+
+    @Param({"100", "10000"})
+    private int degree;
+
+    private ConfigurableApplicationContext context;
+    private FilmLikeStorage filmLikeStorage;
+    private FriendshipStorage friendshipStorage;
+    private DataGenerator.Dataset dataset;
+    private long heavyUser;
+    private long otherHeavyUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:heavy-" + degree + ";DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.zalando.logbook=WARN",
+                        "--filmorate.feed.write-mode=sync");
+
+        filmLikeStorage = context.getBean(FilmLikeStorage.class);
+        friendshipStorage = context.getBean(FriendshipStorage.class);
+
+        dataset = context.getBean(DataGenerator.class).generate(SETTINGS);
+        heavyUser = dataset.userIds()[0];
+        otherHeavyUser = dataset.userIds()[1];
+
+        // диапазоны сдвинуты, чтобы у двух тяжёлых пользователей пересекалась половина лайков и друзей
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        addLikesAndFriends(jdbcTemplate, heavyUser, 0);
+        addLikesAndFriends(jdbcTemplate, otherHeavyUser, degree / 2);
+
+        // лайки добавлены в обход хранилища - пересчитываем счётчики и сбрасываем кеши
+        filmLikeStorage.reconcileLikesCount();
+        context.getBean(LikeMatrix.class).invalidate();
+        context.getBean(FriendGraph.class).invalidate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private void addLikesAndFriends(JdbcTemplate jdbcTemplate, long userId, int offset) {
+        jdbcTemplate.update("MERGE INTO film_like(user_id, film_id) KEY (user_id, film_id) " +
+                "SELECT ?, id FROM films ORDER BY id OFFSET ? ROWS FETCH FIRST ? ROWS ONLY", userId, offset, degree);
+        jdbcTemplate.update("MERGE INTO friendship(user1_id, user2_id) KEY (user1_id, user2_id) " +
+                "SELECT ?, id FROM users WHERE id <> ? ORDER BY id OFFSET ? ROWS FETCH FIRST ? ROWS ONLY",
+                userId, userId, offset, degree);
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        long user(HeavyUserBenchmarks benchmarks) {
+            int[] userIds = benchmarks.dataset.userIds();
+            return userIds[random.nextInt(userIds.length)];
+        }
+    }
+
+    @Benchmark
+    public List<Film> commonFilms() {
+        return filmLikeStorage.getCommonFilms(heavyUser, otherHeavyUser);
+    }
+
+    @Benchmark
+    public List<Film> commonFilmsWithOrdinaryUser(Ids ids) {
+        return filmLikeStorage.getCommonFilms(heavyUser, ids.user(this));
+    }
+
+    @Benchmark
+    public List<User> commonFriends() {
+        return friendshipStorage.getCommonFriends(heavyUser, otherHeavyUser);
+    }
+
+    @Benchmark
+    public List<User> friends() {
+        return friendshipStorage.getFriends(heavyUser);
+    }
+
+    @Benchmark
+    public List<Film> recommendationsForHeavyUser() {
+        return filmLikeStorage.getRecommendations(heavyUser);
+    }
+
+    @Benchmark
+    public List<Film> recommendationsForOrdinaryUser(Ids ids) {
+        return filmLikeStorage.getRecommendations(ids.user(this));
+    }
+}
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Смешанная HTTP-нагрузка на запущенное приложение: сравнение обработки запросов на потоках
+ * Tomcat и на виртуальных потоках (профиль virtual). Лимит допуска включён в обоих режимах,
+ * поэтому разница - только в модели потоков. Число клиентских потоков больше пула Tomcat
+ * по умолчанию, а режим SampleTime показывает хвосты задержек.
+ * httpLog=full - прежний журнал Logbook на TRACE с телами каждого обмена, для сравнения
+ * с выборочным журналом (sampled).
+ * Ответ 503 от лимита допуска считается результатом - доля отказов видна в метрике
+ * filmorate.admission.rejected.
+ * Запуск: mvn -Pbenchmarks compile exec:exec -Djmh.args="HttpLoadBenchmarks"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(256)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class HttpLoadBenchmarks {
+
+    private static final int USERS = 100_000;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"sampled", "full"})
+    private String httpLog;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private DataGenerator.Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(FilmorateApplication.class);
+        if ("virtual".equals(threads)) {
+            builder.profiles("virtual");
+        }
+
+        context = builder.run("--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:http-" + threads + "-" + httpLog + ";DB_CLOSE_DELAY=-1",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--filmorate.admission.enabled=true",
+                "--filmorate.http-log.mode=" + httpLog,
+                "--logging.level.org.zalando.logbook=" + ("full".equals(httpLog) ? "TRACE" : "INFO"),
+                "--filmorate.feed.write-mode=async");
+
+        dataset = context.getBean(DataGenerator.class).generate(DataGenerator.Settings.forUsers(USERS));
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        baseUrl = "http://localhost:" + port;
+        client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    // девять чтений на одну пару лайк/отмена лайка, как в ConcurrentLoadBenchmarks
+    @Benchmark
+    public int mixed(Ids ids) throws IOException, InterruptedException {
+        long userId = dataset.userIds()[ids.random.nextInt(dataset.userIds().length)];
+
+        return switch (ids.random.nextInt(10)) {
+            case 0 -> {
+                long filmId = dataset.filmIds()[ids.random.nextInt(dataset.filmIds().length)];
+                String like = "/films/" + filmId + "/like/" + userId;
+                send("PUT", like);
+                yield send("DELETE", like);
+            }
+            case 1, 2, 3 -> send("GET", "/films/popular?count=10");
+            case 4, 5 -> send("GET", "/users/" + userId + "/friends");
+            case 6, 7 -> send("GET", "/users/" + userId + "/feed");
+            default -> send("GET", "/users/" + userId + "/recommendations");
+        };
+    }
+
+    private int send(String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(10))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,223 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.mappers.FilmRowMappers;
+import ru.yandex.practicum.filmorate.mappers.GenreRowMappers;
+import ru.yandex.practicum.filmorate.mappers.MpaRowMappers;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки горячих путей хранилищ на базе H2 в памяти, наполненной {@link DataGenerator}.
+ * Приложение поднимается без веб-сервера один раз на масштаб, кеши в памяти прогреваются
+ * на разминочных итерациях. readPath=sql выключает рейтинг популярных фильмов, матрицу лайков
+ * и поисковый индекс, чтобы те же сценарии шли прежними SQL-запросами.
+ * Запуск: mvn -Pbenchmarks compile exec:exec -Djmh.args="StorageBenchmarks -p scale=1000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StorageBenchmarks {
+
+    private static final String FILMS_QUERY = "SELECT id, name, description, releaseDate, duration, mpa_id, " +
+            "likes_count FROM films WHERE id BETWEEN ? AND ?";
+
+    // запросы, которыми справочники читались для каждого фильма до кэша в памяти
+    private static final String MPA_QUERY = "SELECT id, name FROM mpa WHERE id = ?";
+    private static final String GENRE_QUERY = "SELECT id, name FROM genres WHERE id = ?";
+
+    @Param({"1000", "100000", "1000000"})
+    private int scale;
+
+    @Param({"memory", "sql"})
+    private String readPath;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private FilmRowMappers filmRowMappers;
+    private MpaRowMappers mpaRowMappers;
+    private GenreRowMappers genreRowMappers;
+    private FilmStorage filmStorage;
+    private FilmLikeStorage filmLikeStorage;
+    private FriendshipStorage friendshipStorage;
+    private FeedStorage feedStorage;
+    private ReviewStorage reviewStorage;
+    private MpaStorage mpaStorage;
+    private GenreStorage genreStorage;
+    private DataGenerator.Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean inMemory = "memory".equals(readPath);
+
+        // аргументы командной строки важнее application.properties, в отличие от properties()
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark-" + scale + "-" + readPath + ";DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.zalando.logbook=WARN",
+                        "--filmorate.feed.write-mode=sync",
+                        "--filmorate.popular.leaderboard-enabled=" + inMemory,
+                        "--filmorate.recommendations.matrix-enabled=" + inMemory,
+                        "--filmorate.search.index-enabled=" + inMemory);
+
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        filmRowMappers = context.getBean(FilmRowMappers.class);
+        mpaRowMappers = context.getBean(MpaRowMappers.class);
+        genreRowMappers = context.getBean(GenreRowMappers.class);
+        filmStorage = context.getBean(FilmStorage.class);
+        filmLikeStorage = context.getBean(FilmLikeStorage.class);
+        friendshipStorage = context.getBean(FriendshipStorage.class);
+        feedStorage = context.getBean(FeedStorage.class);
+        reviewStorage = context.getBean(ReviewStorage.class);
+        mpaStorage = context.getBean(MpaStorage.class);
+        genreStorage = context.getBean(GenreStorage.class);
+
+        dataset = context.getBean(DataGenerator.class).generate(DataGenerator.Settings.forUsers(scale));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // случайные id внутри набора, свои у каждого потока
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        long user(StorageBenchmarks benchmarks) {
+            return pick(benchmarks.dataset.userIds());
+        }
+
+        long film(StorageBenchmarks benchmarks) {
+            return pick(benchmarks.dataset.filmIds());
+        }
+
+        long genre(StorageBenchmarks benchmarks) {
+            return pick(benchmarks.dataset.genreIds());
+        }
+
+        private long pick(int[] ids) {
+            return ids[random.nextInt(ids.length)];
+        }
+    }
+
+    @Benchmark
+    public List<Film> mapRowToFilm(Ids ids) {
+        long from = ids.film(this);
+        return jdbcTemplate.query(FILMS_QUERY, filmRowMappers::mapRowToFilm, from, from + 99);
+    }
+
+    // справочники для одного фильма: рейтинг и два жанра из кэша, при readPath=sql - запросами к базе
+    @Benchmark
+    public Object[] referenceData(Ids ids) {
+        long film = ids.film(this);
+        int mpaId = (int) (1 + film % 5);
+        long firstGenre = ids.genre(this);
+        long secondGenre = ids.genre(this);
+
+        if ("memory".equals(readPath)) {
+            return new Object[]{mpaStorage.findById(mpaId), genreStorage.findById(firstGenre),
+                    genreStorage.findById(secondGenre)};
+        }
+
+        return new Object[]{jdbcTemplate.query(MPA_QUERY, mpaRowMappers::mapRowToMpa, mpaId),
+                jdbcTemplate.query(GENRE_QUERY, genreRowMappers::mapRowToGenre, firstGenre),
+                jdbcTemplate.query(GENRE_QUERY, genreRowMappers::mapRowToGenre, secondGenre)};
+    }
+
+    @Benchmark
+    public List<Film> popularFilms() {
+        return filmLikeStorage.getPopularFilms(10L, null, null);
+    }
+
+    @Benchmark
+    public List<Film> popularFilmsByGenreAndYear(Ids ids) {
+        return filmLikeStorage.getPopularFilms(10L, ids.genre(this), 1950 + ids.film(this) % 70);
+    }
+
+    @Benchmark
+    public List<Film> recommendations(Ids ids) {
+        return filmLikeStorage.getRecommendations(ids.user(this));
+    }
+
+    @Benchmark
+    public List<Film> commonFilms(Ids ids) {
+        return filmLikeStorage.getCommonFilms(ids.user(this), ids.user(this));
+    }
+
+    @Benchmark
+    public void likeAndUnlike(Ids ids) {
+        long filmId = ids.film(this);
+        long userId = ids.user(this);
+        filmLikeStorage.addLike(filmId, userId);
+        filmLikeStorage.removeLike(filmId, userId);
+    }
+
+    @Benchmark
+    public List<Film> search(Ids ids) {
+        return filmStorage.getFilmsByDirectorAndOrByTitle("льм " + ids.film(this) % 100, "title,director");
+    }
+
+    @Benchmark
+    public List<User> friends(Ids ids) {
+        return friendshipStorage.getFriends(ids.user(this));
+    }
+
+    @Benchmark
+    public List<User> commonFriends(Ids ids) {
+        return friendshipStorage.getCommonFriends(ids.user(this), ids.user(this));
+    }
+
+    @Benchmark
+    public List<Feed> userFeed(Ids ids) {
+        return feedStorage.getUserFeed(ids.user(this));
+    }
+
+    @Benchmark
+    public List<Review> reviewsByFilm(Ids ids) {
+        return reviewStorage.getReviewByFilm(ids.film(this), 10);
+    }
+
+    @Benchmark
+    public List<Review> allReviews() {
+        return reviewStorage.getAllReviews(10);
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничение числа одновременно обрабатываемых запросов. На виртуальных потоках контейнер
+ * больше не ограничивает параллельность размером пула, и без этого фильтра тысячи запросов
+ * выстроились бы в очередь за соединениями. Число разрешений по умолчанию равно размеру
+ * пула соединений (spring.datasource.hikari.maximum-pool-size), чтобы лимит и пул
+ * не расходились при настройке. Запрос ждёт разрешения не дольше
+ * filmorate.admission.wait-ms, после чего получает 503 с Retry-After.
+ * Асинхронный запрос (потоковые выгрузки NDJSON) держит разрешение до завершения обработки,
+ * а не до выхода из потока контейнера: разрешение возвращает AsyncListener, а повторные
+ * async-диспетчеризации через фильтр не проходят.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "filmorate.admission.enabled", havingValue = "true")
+public class AdmissionLimitFilter extends OncePerRequestFilter {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final long waitMs;
+    private final Counter rejected;
+
+    public AdmissionLimitFilter(MeterRegistry meterRegistry,
+                                @Value("${filmorate.admission.max-concurrent:"
+                                        + "${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrent,
+                                @Value("${filmorate.admission.wait-ms:500}") long waitMs) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.waitMs = waitMs;
+
+        Gauge.builder("filmorate.admission.active", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .description("Запросов в обработке")
+                .register(meterRegistry);
+        Gauge.builder("filmorate.admission.waiting", permits, Semaphore::getQueueLength)
+                .description("Запросов, ожидающих разрешения")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("filmorate.admission.rejected")
+                .description("Запросы, отклонённые из-за превышения лимита")
+                .register(meterRegistry);
+
+        log.info("Лимит одновременных запросов: {}, ожидание до {} мс", maxConcurrent, waitMs);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // состояние и метрики должны отвечать и под нагрузкой
+        return request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            rejected.increment();
+            log.warn("Запрос {} {} отклонён: занято {} из {} разрешений", request.getMethod(),
+                    request.getRequestURI(), maxConcurrent - permits.availablePermits(), maxConcurrent);
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Сервер перегружен, повторите запрос позже");
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete());
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Возвращает разрешение асинхронного запроса ровно один раз, чем бы ни закончилась обработка.
+     */
+    private class ReleaseOnComplete implements AsyncListener {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // обработка снова ушла в асинхронный режим - ждём её завершения
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogFormatter;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал HTTP-обменов с записью в фоновом потоке. Сообщение форматируется в потоке запроса
+ * (объекты запроса и ответа после завершения обмена переиспользуются контейнером), а запись
+ * в лог уходит в ограниченную очередь. Если очередь заполнена, сообщение отбрасывается,
+ * а не задерживает запрос; такие сообщения считает filmorate.http-log.dropped.
+ */
+@Slf4j
+class AsyncLogbookSink implements Sink, DisposableBean {
+
+    private final HttpLogFormatter formatter;
+    private final HttpLogWriter writer;
+    private final ThreadPoolExecutor executor;
+
+    AsyncLogbookSink(HttpLogFormatter formatter, HttpLogWriter writer, int queueCapacity,
+                     MeterRegistry meterRegistry) {
+        this.formatter = formatter;
+        this.writer = writer;
+
+        Counter dropped = Counter.builder("filmorate.http-log.dropped")
+                .description("Сообщения журнала HTTP, отброшенные из-за заполненной очереди")
+                .register(meterRegistry);
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("filmorate.http-log.queue.size", queue, BlockingQueue::size)
+                .description("Сообщений журнала HTTP в очереди на запись")
+                .register(meterRegistry);
+
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, task -> {
+            Thread thread = new Thread(task, "http-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        }, (task, executor) -> dropped.increment());
+    }
+
+    @Override
+    public boolean isActive() {
+        return writer.isActive();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request) throws IOException {
+        String message = formatter.format(precorrelation, request);
+        executor.execute(() -> write(() -> writer.write(precorrelation, message)));
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response) throws IOException {
+        String message = formatter.format(correlation, response);
+        executor.execute(() -> write(() -> writer.write(correlation, message)));
+    }
+
+    @Override
+    public void writeBoth(Correlation correlation, HttpRequest request, HttpResponse response) throws IOException {
+        String requestMessage = formatter.format(correlation, request);
+        String responseMessage = formatter.format(correlation, response);
+        executor.execute(() -> write(() -> {
+            writer.write(correlation, requestMessage);
+            writer.write(correlation, responseMessage);
+        }));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // дописываем то, что уже в очереди
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Журнал HTTP не дописан при остановке, сообщений в очереди: {}", executor.getQueue().size());
+        }
+    }
+
+    private void write(Write write) {
+        try {
+            write.run();
+        } catch (IOException e) {
+            log.error("Не удалось записать журнал HTTP: {}", e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Write {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.zalando.logbook.HttpLogFormatter;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import java.time.Duration;
+
+/**
+ * Режим журнала HTTP filmorate.http-log.mode=sampled (по умолчанию): выборочная запись
+ * и фоновый поток вместо синхронной записи каждого обмена, запись на уровне INFO.
+ * С mode=full остаются настройки Logbook по умолчанию, журнал пишется на TRACE.
+ * Длина тела в журнале ограничена logbook.write.max-body-size.
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.http-log.mode", havingValue = "sampled", matchIfMissing = true)
+public class HttpLogConfig {
+
+    @Bean
+    public Strategy sampledLogbookStrategy(@Value("${filmorate.http-log.slow-request-ms:1000}") long slowRequestMs) {
+        return new SampledLogbookStrategy(Duration.ofMillis(slowRequestMs));
+    }
+
+    // сразу после лимита допуска и раньше фильтра Logbook
+    @Bean
+    public FilterRegistrationBean<HttpLogSamplingFilter> httpLogSamplingFilter(
+            @Value("${filmorate.http-log.sample-rate:0.01}") double sampleRate) {
+        FilterRegistrationBean<HttpLogSamplingFilter> registration =
+                new FilterRegistrationBean<>(new HttpLogSamplingFilter(sampleRate));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+
+    @Bean
+    public HttpLogWriter infoHttpLogWriter() {
+        return new InfoHttpLogWriter();
+    }
+
+    @Bean
+    public Sink asyncLogbookSink(HttpLogFormatter formatter, HttpLogWriter writer, MeterRegistry meterRegistry,
+                                 @Value("${filmorate.http-log.queue-capacity:1000}") int queueCapacity) {
+        return new AsyncLogbookSink(formatter, writer, queueCapacity, meterRegistry);
+    }
+}
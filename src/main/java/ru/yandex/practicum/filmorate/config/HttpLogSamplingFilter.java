@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Решает один раз на обмен, попадёт ли он в выборку журнала HTTP, и хранит решение в атрибуте запроса.
+ * Стратегия Logbook не видит запрос сервлета, поэтому на время прохода по цепочке фильтров решение
+ * выставляется и в поток, а по выходе из фильтра снимается - поток из пула не уносит его
+ * в следующий запрос. Асинхронная диспетчеризация берёт то же решение из атрибута.
+ * Фильтр должен стоять раньше фильтра Logbook.
+ */
+class HttpLogSamplingFilter extends OncePerRequestFilter {
+
+    private static final String SAMPLED_ATTRIBUTE = HttpLogSamplingFilter.class.getName() + ".sampled";
+    private static final ThreadLocal<Boolean> CURRENT = new ThreadLocal<>();
+
+    private final double sampleRate;
+
+    HttpLogSamplingFilter(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Попал ли в выборку обмен, который сейчас обрабатывается в этом потоке.
+     * Вне фильтра (например, при записи журнала по завершении асинхронного запроса в чужом потоке)
+     * обмен считается не попавшим в выборку: ошибки и медленные запросы всё равно пишутся, но без тел.
+     */
+    static boolean isSampled() {
+        return Boolean.TRUE.equals(CURRENT.get());
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Boolean sampled = (Boolean) request.getAttribute(SAMPLED_ATTRIBUTE);
+        if (sampled == null) {
+            sampled = ThreadLocalRandom.current().nextDouble() < sampleRate;
+            request.setAttribute(SAMPLED_ATTRIBUTE, sampled);
+        }
+
+        CURRENT.set(sampled);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            CURRENT.remove();
+        }
+    }
+}
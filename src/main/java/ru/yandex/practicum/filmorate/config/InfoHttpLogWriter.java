@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpLogWriter;
+import org.zalando.logbook.Precorrelation;
+
+/**
+ * Запись журнала HTTP на уровне INFO в логгер Logbook. Стандартный писатель Logbook
+ * пишет на TRACE, и чтобы увидеть выборочный журнал, пришлось бы включать TRACE целиком.
+ * Выключается как обычно: logging.level.org.zalando.logbook=WARN.
+ */
+@Slf4j(topic = "org.zalando.logbook.Logbook")
+class InfoHttpLogWriter implements HttpLogWriter {
+
+    @Override
+    public boolean isActive() {
+        return log.isInfoEnabled();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, String request) {
+        log.info(request);
+    }
+
+    @Override
+    public void write(Correlation correlation, String response) {
+        log.info(response);
+    }
+}
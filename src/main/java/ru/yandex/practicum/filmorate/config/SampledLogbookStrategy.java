@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Пишет в журнал не все обмены, а только ошибки (статус 400 и выше), медленные запросы
+ * и случайную долю остальных. Попадёт ли обмен в выборку, решает HttpLogSamplingFilter до обработки запроса:
+ * тела буферизуются только у выбранных, поэтому остальные ответы не копируются в память.
+ * Ошибки и медленные запросы вне выборки пишутся без тел - статус и длительность
+ * становятся известны только после ответа.
+ * Решение хранится в атрибуте запроса, стратегия читает его через фильтр.
+ */
+class SampledLogbookStrategy implements Strategy {
+
+    private final Duration slowThreshold;
+
+    SampledLogbookStrategy(Duration slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        return HttpLogSamplingFilter.isSampled() ? request.withBody() : request.withoutBody();
+    }
+
+    @Override
+    public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+        return HttpLogSamplingFilter.isSampled() ? response.withBody() : response.withoutBody();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request, Sink sink) {
+        // запрос пишется вместе с ответом, когда станет ясно, нужен ли он
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+            throws IOException {
+        if (HttpLogSamplingFilter.isSampled()
+                || response.getStatus() >= 400
+                || correlation.getDuration().compareTo(slowThreshold) >= 0) {
+            sink.writeBoth(correlation, request, response);
+        }
+    }
+}
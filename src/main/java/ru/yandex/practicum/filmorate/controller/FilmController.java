@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,6 +12,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
@@ -21,16 +23,29 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService service;
+    private final NdjsonResponses ndjsonResponses;
 
-    public FilmController(@Qualifier("dbFilmService") FilmService service) {
+    public FilmController(@Qualifier("dbFilmService") FilmService service, NdjsonResponses ndjsonResponses) {
         this.service = service;
+        this.ndjsonResponses = ndjsonResponses;
     }
 
     @GetMapping
-    public List<Film> findAll() {
-        return service.findAll();
+    public List<Film> findAll(@RequestParam(required = false) Long afterId,
+                            @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            return service.findAll();
+        }
+
+        return service.findPage(afterId, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(required = false) Long afterId) {
+        return ndjsonResponses.<Film>stream(action -> service.streamAll(afterId, action));
     }
 
+    @SqlBudget(5)
     @GetMapping("/{id}")
     public Film findById(@PathVariable Long id) {
         return service.findById(id);
@@ -61,6 +76,7 @@ public class FilmController {
         service.removeLike(id, userId);
     }
 
+    @SqlBudget(10)
     @GetMapping("/popular")
     public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") Long count, Long genreId, Long year) {
         return service.getPopularFilms(count, genreId, year);
@@ -71,11 +87,13 @@ public class FilmController {
         return service.getFilmsByDirector(id, sortBy);
     }
 
+    @SqlBudget(10)
     @GetMapping("/search")
     public List<Film> getFilmsByDirectorAndOrByTitle(@RequestParam String query, @RequestParam String by) {
         return service.getFilmsByDirectorAndOrByTitle(query, by);
     }
 
+    @SqlBudget(10)
     @GetMapping("/common")
     public List<Film> getCommonFilms(@RequestParam Long userId, @RequestParam Long friendId) {
         return service.getCommonFilms(userId, friendId);
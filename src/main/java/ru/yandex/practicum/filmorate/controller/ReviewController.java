@@ -39,11 +39,13 @@ public class ReviewController {
     }
 
 
+    @SqlBudget(3)
     @GetMapping("/{id}")
     public Review getReviewById(@PathVariable Long id) {
         return reviewService.getReviewById(id);
     }
 
+    @SqlBudget(3)
     @GetMapping
     public List<Review> getReviewByFilm(@RequestParam(required = false) Long filmId,
                                         @RequestParam(defaultValue = "10") int count) {
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Наибольшее число SQL-запросов на один вызов эндпоинта, включая первую загрузку кешей в памяти.
+ * Превышение пишется в лог, а с filmorate.sql.budget.enforce=true запрос завершается ошибкой.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlBudget {
+
+    int value();
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlUsage;
+
+/**
+ * Перед записью тела ответа выставляет заголовки расхода SQL и проверяет {@link SqlBudget}:
+ * к этому моменту все запросы обработчика уже выполнены, а ответ ещё не отправлен.
+ */
+@ControllerAdvice
+public class SqlUsageAdvice implements ResponseBodyAdvice<Object> {
+
+    private final SqlUsageFilter filter;
+    private final boolean enforceBudget;
+
+    public SqlUsageAdvice(SqlUsageFilter filter,
+                          @Value("${filmorate.sql.budget.enforce:false}") boolean enforceBudget) {
+        this.filter = filter;
+        this.enforceBudget = enforceBudget;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return body;
+        }
+
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+        SqlUsage usage = SqlUsageFilter.usage(httpRequest);
+        if (usage == null) {
+            return body;
+        }
+
+        SqlBudget budget = returnType.getMethodAnnotation(SqlBudget.class);
+        if (enforceBudget && budget != null) {
+            usage.requireAtMost(budget.value(), httpRequest.getMethod() + " " + httpRequest.getRequestURI());
+        }
+
+        if (filter.isHeadersEnabled()) {
+            response.getHeaders().set(SqlUsageFilter.COUNT_HEADER, String.valueOf(usage.statements()));
+            response.getHeaders().set(SqlUsageFilter.TIME_HEADER, String.valueOf(usage.millis()));
+        }
+
+        return body;
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlUsage;
+
+import java.io.IOException;
+
+/**
+ * Расход SQL на HTTP-запрос: число запросов и их суммарное время. Итог пишется в лог,
+ * превышение {@link SqlBudget} - предупреждением. При filmorate.sql.headers-enabled
+ * расход отдаётся в заголовках X-Sql-Count и X-Sql-Time (мс); для ответов с телом их
+ * выставляет {@link SqlUsageAdvice} перед записью тела.
+ */
+@Slf4j
+@Component
+public class SqlUsageFilter extends OncePerRequestFilter {
+
+    static final String COUNT_HEADER = "X-Sql-Count";
+    static final String TIME_HEADER = "X-Sql-Time";
+
+    private static final String START_ATTRIBUTE = SqlUsageFilter.class.getName() + ".start";
+
+    private final boolean headersEnabled;
+
+    public SqlUsageFilter(@Value("${filmorate.sql.headers-enabled:true}") boolean headersEnabled) {
+        this.headersEnabled = headersEnabled;
+    }
+
+    // расход SQL с начала обработки запроса, если запрос прошёл через фильтр
+    static SqlUsage usage(HttpServletRequest request) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        return start instanceof SqlUsage before ? SqlStatementCounter.snapshot().since(before) : null;
+    }
+
+    static void writeHeaders(HttpServletResponse response, SqlUsage usage) {
+        response.setHeader(COUNT_HEADER, String.valueOf(usage.statements()));
+        response.setHeader(TIME_HEADER, String.valueOf(usage.millis()));
+    }
+
+    boolean isHeadersEnabled() {
+        return headersEnabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        request.setAttribute(START_ATTRIBUTE, SqlStatementCounter.snapshot());
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SqlUsage usage = usage(request);
+
+            // у ответов без тела заголовки ещё можно выставить здесь
+            if (headersEnabled && !response.isCommitted()) {
+                writeHeaders(response, usage);
+            }
+
+            if (request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler
+                    && handler.hasMethodAnnotation(SqlBudget.class)
+                    && usage.statements() > handler.getMethodAnnotation(SqlBudget.class).value()) {
+                log.warn("{} {}: {} SQL-запросов при бюджете {}", request.getMethod(), request.getRequestURI(),
+                        usage.statements(), handler.getMethodAnnotation(SqlBudget.class).value());
+            } else {
+                log.debug("{} {}: {} SQL-запросов, {} мс", request.getMethod(), request.getRequestURI(),
+                        usage.statements(), usage.millis());
+            }
+        }
+    }
+}
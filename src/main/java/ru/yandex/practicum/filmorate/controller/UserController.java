@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,7 +10,9 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
@@ -22,14 +25,26 @@ import java.util.List;
 public class UserController {
 
     private final UserService service;
+    private final NdjsonResponses ndjsonResponses;
 
-    public UserController(@Qualifier("dbUserService") UserService service) {
+    public UserController(@Qualifier("dbUserService") UserService service, NdjsonResponses ndjsonResponses) {
         this.service = service;
+        this.ndjsonResponses = ndjsonResponses;
     }
 
     @GetMapping
-    public List<User> findAll() {
-        return service.findAll();
+    public List<User> findAll(@RequestParam(required = false) Long afterId,
+                            @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            return service.findAll();
+        }
+
+        return service.findPage(afterId, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAll(@RequestParam(required = false) Long afterId) {
+        return ndjsonResponses.<User>stream(action -> service.streamAll(afterId, action));
     }
 
     @GetMapping("/{id}")
@@ -62,21 +77,42 @@ public class UserController {
         return service.removeFriend(id, friendId);
     }
 
+    @SqlBudget(5)
     @GetMapping("/{id}/friends")
     public List<User> getFriends(@PathVariable Long id) {
         return service.getFriends(id);
     }
 
+    @SqlBudget(5)
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
         return service.getCommonFriends(id, otherId);
     }
 
+    @SqlBudget(5)
     @GetMapping("/{id}/feed")
-    public List<Feed> getFeed(@PathVariable Long id) {
-        return service.getUserFeed(id);
+    public List<Feed> getFeed(@PathVariable Long id,
+                              @RequestParam(required = false) Long since,
+                              @RequestParam(required = false) Long sinceId,
+                              @RequestParam(required = false) Long until,
+                              @RequestParam(required = false) Integer limit) {
+        if (since == null && sinceId == null && until == null && limit == null) {
+            return service.getUserFeed(id);
+        }
+
+        return service.getUserFeed(id, since, sinceId, until, limit);
+    }
+
+    @SqlBudget(5)
+    @GetMapping("/{id}/timeline")
+    public List<Feed> getTimeline(@PathVariable Long id,
+                                  @RequestParam(required = false) Long before,
+                                  @RequestParam(required = false) Long beforeId,
+                                  @RequestParam(required = false) Integer limit) {
+        return service.getTimeline(id, before, beforeId, limit);
     }
 
+    @SqlBudget(10)
     @GetMapping("/{id}/recommendations")
     public List<Film> getRecommendations(@PathVariable Long id) {
         return service.getRecommendations(id);
@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.job;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+/**
+ * Периодически сверяет films.likes_count с таблицей film_like и исправляет расхождения,
+ * например после правки данных в обход приложения.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikesCountReconciliationJob {
+
+    private final FilmLikeStorage filmLikeStorage;
+
+    @Scheduled(initialDelayString = "${filmorate.likes.reconcile-interval-ms:600000}",
+            fixedDelayString = "${filmorate.likes.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        int repaired = filmLikeStorage.reconcileLikesCount();
+        log.info("Сверка счётчиков лайков завершена, исправлено фильмов: {}", repaired);
+    }
+}
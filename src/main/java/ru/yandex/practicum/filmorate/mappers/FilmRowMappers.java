@@ -9,13 +9,15 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.FilmGenreStorage;
-import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -25,14 +27,15 @@ public class FilmRowMappers {
     private final MpaStorage mpaStorage;
     private final DirectorStorage directorStorage;
     private final FilmGenreStorage filmGenreStorage;
-    private final FilmLikeStorage filmLikeStorage;
 
+    /**
+     * Маппит только строку таблицы films, без обращений к другим таблицам.
+     * Рейтинг содержит лишь id, жанры и режиссёры заполняются в {@link #hydrate(List)}.
+     * Запрос должен выбирать столбец likes_count.
+     */
     public Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
-        Integer mpaId = resultSet.getInt("mpa_id");
-        Mpa mpa = mpaStorage.findById(mpaId);
-        List<Genre> genres = filmGenreStorage.getListGenreFromDbGenres(resultSet.getLong("id"));
-        Long likes = filmLikeStorage.getLikesById(resultSet.getLong("id"));
-        List<Director> directors = directorStorage.getDirectorsByFilm(resultSet.getLong("id"));
+        long mpaId = resultSet.getLong("mpa_id");
+        Mpa mpa = resultSet.wasNull() ? null : Mpa.builder().id(mpaId).build();
         LocalDate date = LocalDate.of(1895, 12, 28);
         if (resultSet.getString("releaseDate") != null) {
             date = LocalDate.parse(resultSet.getString("releaseDate"));
@@ -40,14 +43,43 @@ public class FilmRowMappers {
 
         return Film.builder()
                 .id(resultSet.getLong("id"))
-                .likes(likes)
+                .likes(resultSet.getLong("likes_count"))
                 .name(resultSet.getString("name"))
                 .description(resultSet.getString("description"))
                 .releaseDate(date)
                 .duration(resultSet.getInt("duration"))
                 .mpa(mpa)
-                .genres(genres)
-                .directors(directors)
                 .build();
     }
+
+    /**
+     * Дополняет список фильмов рейтингами, жанрами и режиссёрами.
+     * Количество запросов к базе не зависит от размера списка - по одному на каждую связанную таблицу,
+     * рейтинги берутся из кэша справочника без обращения к базе.
+     */
+    public List<Film> hydrate(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Set<Long> filmIds = films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+        Map<Long, List<Genre>> genres = filmGenreStorage.getGenresByFilmIds(filmIds);
+        Map<Long, List<Director>> directors = directorStorage.getDirectorsByFilmIds(filmIds);
+
+        log.debug("Загружены связанные данные для {} фильмов", filmIds.size());
+
+        return films.stream()
+                .map(film -> film.toBuilder()
+                        .mpa(film.getMpa() == null ? null : mpaStorage.findById(film.getMpa().getId().intValue()))
+                        .genres(genres.getOrDefault(film.getId(), List.of()))
+                        .directors(directors.getOrDefault(film.getId(), List.of()))
+                        .build())
+                .toList();
+    }
+
+    public Film hydrate(Film film) {
+        return hydrate(List.of(film)).get(0);
+    }
 }
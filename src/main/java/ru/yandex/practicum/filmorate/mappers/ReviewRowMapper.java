@@ -18,7 +18,7 @@ public class ReviewRowMapper implements RowMapper<Review> {
         Boolean isPositive = rs.getBoolean("is_positive");
         Long userId = rs.getLong("user_id");
         Long filmId = rs.getLong("film_id");
-        Integer useful = rs.getInt("lik") - rs.getInt("dis");
+        Integer useful = rs.getInt("useful");
 
         return Review.builder()
                 .reviewId(reviewId)
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmService {
 
@@ -14,6 +15,10 @@ public interface FilmService {
 
     List<Film> findAll();
 
+    List<Film> findPage(Long afterId, Integer limit);
+
+    void streamAll(Long afterId, Consumer<Film> action);
+
     Film findById(Long id);
 
     void addLike(long filmId, long userId);
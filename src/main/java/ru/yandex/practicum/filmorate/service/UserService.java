@@ -5,6 +5,7 @@ import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserService {
 
@@ -20,6 +21,10 @@ public interface UserService {
 
     List<User> findAll();
 
+    List<User> findPage(Long afterId, Integer limit);
+
+    void streamAll(Long afterId, Consumer<User> action);
+
     User findById(Long id);
 
     User addFriend(Long mainUserId, Long friendUserId);
@@ -28,5 +33,9 @@ public interface UserService {
 
     List<Feed> getUserFeed(Long id);
 
+    List<Feed> getUserFeed(Long id, Long since, Long sinceId, Long until, Integer limit);
+
+    List<Feed> getTimeline(Long id, Long before, Long beforeId, Integer limit);
+
     List<Film> getRecommendations(Long id);
 }
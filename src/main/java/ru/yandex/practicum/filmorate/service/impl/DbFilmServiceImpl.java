@@ -13,6 +13,7 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service("dbFilmService")
@@ -51,6 +52,16 @@ public class DbFilmServiceImpl implements FilmService {
         return filmStorage.findAll();
     }
 
+    @Override
+    public List<Film> findPage(Long afterId, Integer limit) {
+        return filmStorage.findPage(PageRequests.afterId(afterId), PageRequests.limit(limit));
+    }
+
+    @Override
+    public void streamAll(Long afterId, Consumer<Film> action) {
+        filmStorage.streamAll(PageRequests.afterId(afterId), action);
+    }
+
     @Override
     public Film findById(Long id) {
         return filmStorage.findById(id);
@@ -12,10 +12,12 @@ import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service("dbUserService")
@@ -25,13 +27,16 @@ public class DbUserServiceImpl implements UserService {
     private final FeedStorage feedStorage;
     private final FriendshipStorage friendshipStorage;
     private final FilmLikeStorage filmLikeStorage;
+    private final TimelineStorage timelineStorage;
 
     public DbUserServiceImpl(@Qualifier("userDbStorage") UserStorage storage, FriendshipStorage friendshipStorage,
-                             FeedStorage feedStorage, FilmLikeStorage filmLikeStorage) {
+                             FeedStorage feedStorage, FilmLikeStorage filmLikeStorage,
+                             TimelineStorage timelineStorage) {
         this.storage = storage;
         this.friendshipStorage = friendshipStorage;
         this.feedStorage = feedStorage;
         this.filmLikeStorage = filmLikeStorage;
+        this.timelineStorage = timelineStorage;
     }
 
     @Override
@@ -67,6 +72,16 @@ public class DbUserServiceImpl implements UserService {
         return storage.findAll();
     }
 
+    @Override
+    public List<User> findPage(Long afterId, Integer limit) {
+        return storage.findPage(PageRequests.afterId(afterId), PageRequests.limit(limit));
+    }
+
+    @Override
+    public void streamAll(Long afterId, Consumer<User> action) {
+        storage.streamAll(PageRequests.afterId(afterId), action);
+    }
+
     @Override
     public User findById(Long id) {
         return storage.findById(id);
@@ -100,6 +115,26 @@ public class DbUserServiceImpl implements UserService {
         return feedStorage.getUserFeed(id);
     }
 
+    @Override
+    public List<Feed> getUserFeed(Long id, Long since, Long sinceId, Long until, Integer limit) {
+        findById(id);
+        return feedStorage.getUserFeedPage(id,
+                since == null ? Long.MIN_VALUE : since,
+                sinceId == null ? 0 : sinceId,
+                until == null ? Long.MAX_VALUE : until,
+                PageRequests.limit(limit));
+    }
+
+    @Override
+    public List<Feed> getTimeline(Long id, Long before, Long beforeId, Integer limit) {
+        findById(id);
+        feedStorage.flush(timelineStorage.getAuthors(id));
+        return timelineStorage.getTimeline(id,
+                before == null ? Long.MAX_VALUE : before,
+                beforeId == null ? Long.MAX_VALUE : beforeId,
+                PageRequests.limit(limit));
+    }
+
     @Override
     public List<Film> getRecommendations(Long id) {
         return filmLikeStorage.getRecommendations(id);
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.service.impl;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+/**
+ * Проверка параметров постраничной выгрузки ?afterId=&limit=.
+ * Страница задаётся последним полученным id, а не смещением, поэтому запрос
+ * идёт по первичному ключу и не перебирает уже отданные строки.
+ */
+final class PageRequests {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private PageRequests() {
+    }
+
+    static long afterId(Long afterId) {
+        if (afterId == null) {
+            return 0;
+        }
+
+        if (afterId < 0) {
+            throw new ValidationException("Параметр afterId не может быть отрицательным");
+        }
+
+        return afterId;
+    }
+
+    static int limit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_LIMIT);
+        }
+
+        return limit;
+    }
+}
@@ -3,7 +3,9 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface DirectorStorage {
 
@@ -17,6 +19,8 @@ public interface DirectorStorage {
 
     List<Director> getDirectorsByFilm(Long filmId);
 
+    Map<Long, List<Director>> getDirectorsByFilmIds(Collection<Long> filmIds);
+
     void delete(Long id);
 
     void updateDirectorsByFilm(Film film);
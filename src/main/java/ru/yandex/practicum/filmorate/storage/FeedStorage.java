@@ -4,6 +4,7 @@ import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FeedStorage {
@@ -12,8 +13,14 @@ public interface FeedStorage {
 
     Feed findById(Long id);
 
-    Feed create(Long userId, EventType event, Operation operation, Long entityId);
+    void create(Long userId, EventType event, Operation operation, Long entityId);
 
     List<Feed> getUserFeed(Long id);
 
+    // дописывает ожидающие фоновой записи события указанных пользователей
+    void flush(Collection<Long> userIds);
+
+    // события пользователя строго после курсора (since, sinceId) и раньше until, по времени
+    List<Feed> getUserFeedPage(Long id, long since, long sinceId, long until, int limit);
+
 }
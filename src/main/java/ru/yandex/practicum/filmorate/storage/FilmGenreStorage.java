@@ -3,7 +3,9 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface FilmGenreStorage {
 
@@ -15,4 +17,6 @@ public interface FilmGenreStorage {
 
     List<Genre> getListGenreFromDbGenres(Long filmId);
 
+    Map<Long, List<Genre>> getGenresByFilmIds(Collection<Long> filmIds);
+
 }
@@ -14,6 +14,9 @@ public interface FilmLikeStorage {
 
     Long getLikesById(Long id);
 
+    // пересчитывает films.likes_count по таблице film_like, возвращает число исправленных фильмов
+    int reconcileLikesCount();
+
     List<Film> getCommonFilms(Long userId, Long friendUserId);
 
     List<Film> getRecommendations(Long userId);
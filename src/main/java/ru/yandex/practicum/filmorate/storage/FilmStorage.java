@@ -3,11 +3,18 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> findAll();
 
+    // страница фильмов с id больше afterId, упорядоченная по id
+    List<Film> findPage(long afterId, int limit);
+
+    // передаёт фильмы с id больше afterId по мере чтения, не собирая их в один список
+    void streamAll(long afterId, Consumer<Film> action);
+
     Film findById(Long id);
 
     Film create(Film film);
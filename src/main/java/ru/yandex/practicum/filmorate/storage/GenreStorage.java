@@ -18,4 +18,7 @@ public interface GenreStorage {
 
     List<Genre> getExistGenres(Film film);
 
+    // перечитывает справочник из базы, вызывается после изменения таблицы genres
+    void refresh();
+
 }
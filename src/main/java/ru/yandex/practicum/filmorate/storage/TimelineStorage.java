@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Feed;
+
+import java.util.List;
+
+public interface TimelineStorage {
+
+    // раскладывает записанные события по лентам друзей автора
+    void fanOut(List<Feed> events);
+
+    void onFriendAdded(Long userId, Long friendId);
+
+    void onFriendRemoved(Long userId, Long friendId);
+
+    // пользователи, чьи события попадают в ленту пользователя
+    List<Long> getAuthors(Long userId);
+
+    // события друзей пользователя строго раньше курсора (before, beforeId), от новых к старым
+    List<Feed> getTimeline(Long userId, long before, long beforeId, int limit);
+
+    // заново раскладывает по лентам последние события из feed, например после массовой загрузки данных
+    int rebuild();
+}
@@ -2,14 +2,25 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     List<User> findAll();
 
+    // страница пользователей с id больше afterId, упорядоченная по id
+    List<User> findPage(long afterId, int limit);
+
+    // передаёт пользователей с id больше afterId по мере чтения, не собирая их в один список
+    void streamAll(long afterId, Consumer<User> action);
+
     User findById(Long id);
 
+    // пользователи с указанными id одним запросом, по возрастанию id; отсутствующие пропускаются
+    List<User> findByIds(Collection<Long> ids);
+
     User create(User user);
 
     User update(User newUser);
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Индекс в памяти для GET /films/search: триграммы названий фильмов и имён режиссёров
+ * и связи фильм - режиссёр. Поиск находит id фильмов без обращения к базе, упорядочивание
+ * по лайкам делает вызывающий код. Индекс загружается при первом поиске и обновляется
+ * после коммита при изменении фильмов и режиссёров.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NgramIndex titles = new NgramIndex();
+    private final NgramIndex directorNames = new NgramIndex();
+    private final Map<Integer, int[]> directorsByFilm = new HashMap<>();
+    private final Map<Integer, Set<Integer>> filmsByDirector = new HashMap<>();
+    private volatile boolean loaded;
+
+    public FilmSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Возвращает id фильмов, у которых название и/или имя одного из режиссёров содержит запрос.
+     */
+    public List<Long> search(String query, boolean byTitle, boolean byDirector) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            IntStream.Builder result = IntStream.builder();
+
+            if (byTitle) {
+                Arrays.stream(titles.search(query)).forEach(result);
+            }
+
+            if (byDirector) {
+                Arrays.stream(directorNames.search(query))
+                        .mapToObj(filmsByDirector::get)
+                        .filter(Objects::nonNull)
+                        .forEach(films -> films.forEach(result::add));
+            }
+
+            return result.build()
+                    .distinct()
+                    .mapToObj(Long::valueOf)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void onFilmSaved(long filmId, String name, Collection<Long> directorIds) {
+        int id = Math.toIntExact(filmId);
+        int[] directors = directorIds.stream().mapToInt(Math::toIntExact).distinct().toArray();
+
+        AfterCommit.run(() -> write(() -> {
+            titles.put(id, name);
+            unlinkDirectors(id);
+            linkDirectors(id, directors);
+        }));
+    }
+
+    public void onFilmDeleted(long filmId) {
+        int id = Math.toIntExact(filmId);
+
+        AfterCommit.run(() -> write(() -> {
+            titles.remove(id);
+            unlinkDirectors(id);
+        }));
+    }
+
+    public void onDirectorSaved(long directorId, String name) {
+        int id = Math.toIntExact(directorId);
+
+        AfterCommit.run(() -> write(() -> directorNames.put(id, name)));
+    }
+
+    public void onDirectorDeleted(long directorId) {
+        int id = Math.toIntExact(directorId);
+
+        // связи film_director удаляются в базе каскадно
+        AfterCommit.run(() -> write(() -> {
+            directorNames.remove(id);
+            Set<Integer> films = filmsByDirector.remove(id);
+            if (films != null) {
+                films.forEach(filmId -> directorsByFilm.computeIfPresent(filmId, (key, directors) -> {
+                    int[] rest = Arrays.stream(directors).filter(director -> director != id).toArray();
+                    return rest.length == 0 ? null : rest;
+                }));
+            }
+        }));
+    }
+
+    /**
+     * Сбрасывает индекс, он будет перечитан из базы при следующем обращении.
+     * Нужен после записи в таблицы в обход приложения, например генератором данных.
+     */
+    public void invalidate() {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                loaded = false;
+                titles.clear();
+                directorNames.clear();
+                directorsByFilm.clear();
+                filmsByDirector.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            // пока индекс не загружен, изменения не нужны - загрузка прочитает их из базы.
+            // Если загрузка уже успела их увидеть, повторное применение ничего не меняет
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void linkDirectors(int filmId, int[] directors) {
+        if (directors.length == 0) {
+            return;
+        }
+
+        directorsByFilm.put(filmId, directors);
+        for (int director : directors) {
+            filmsByDirector.computeIfAbsent(director, key -> new HashSet<>()).add(filmId);
+        }
+    }
+
+    private void unlinkDirectors(int filmId) {
+        int[] directors = directorsByFilm.remove(filmId);
+
+        if (directors == null) {
+            return;
+        }
+
+        for (int director : directors) {
+            Set<Integer> films = filmsByDirector.get(director);
+            if (films != null) {
+                films.remove(filmId);
+                if (films.isEmpty()) {
+                    filmsByDirector.remove(director);
+                }
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+
+            titles.clear();
+            directorNames.clear();
+            directorsByFilm.clear();
+            filmsByDirector.clear();
+
+            jdbcTemplate.query("SELECT id, name FROM films", (RowCallbackHandler) resultSet ->
+                    titles.put(Math.toIntExact(resultSet.getLong("id")), resultSet.getString("name")));
+
+            jdbcTemplate.query("SELECT id, name FROM directors", (RowCallbackHandler) resultSet ->
+                    directorNames.put(Math.toIntExact(resultSet.getLong("id")), resultSet.getString("name")));
+
+            Map<Integer, Set<Integer>> links = new HashMap<>();
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_director", (RowCallbackHandler) resultSet ->
+                    links.computeIfAbsent(Math.toIntExact(resultSet.getLong("film_id")), key -> new HashSet<>())
+                            .add(Math.toIntExact(resultSet.getLong("director_id"))));
+            links.forEach((filmId, directors) ->
+                    linkDirectors(filmId, directors.stream().mapToInt(Integer::intValue).toArray()));
+
+            loaded = true;
+            log.info("Поисковый индекс фильмов загружен, фильмов: {}, режиссёров: {}",
+                    titles.size(), directorNames.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Граф дружбы в памяти. Для каждого пользователя хранятся сжатые битовые множества тех,
+ * кого он добавил в друзья, и тех, кто добавил его, поэтому общие друзья считаются
+ * пересечением множеств без запросов к friendship. Граф загружается при первом обращении
+ * и обновляется после коммита.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RoaringBitmap> friendsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> followersByUser = new HashMap<>();
+    private volatile boolean loaded;
+
+    public FriendGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // id друзей пользователя по возрастанию
+    public List<Long> getFriends(long userId) {
+        return read(() -> toIds(friendsByUser.getOrDefault(Math.toIntExact(userId), EMPTY)));
+    }
+
+    // id пользователей, добавивших данного в друзья, по возрастанию
+    public List<Long> getFollowers(long userId) {
+        return read(() -> toIds(followersByUser.getOrDefault(Math.toIntExact(userId), EMPTY)));
+    }
+
+    public int getFollowerCount(long userId) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            return followersByUser.getOrDefault(Math.toIntExact(userId), EMPTY).getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id общих друзей двух пользователей по возрастанию
+    public List<Long> getCommonFriends(long firstUserId, long secondUserId) {
+        return read(() -> toIds(RoaringBitmap.and(
+                friendsByUser.getOrDefault(Math.toIntExact(firstUserId), EMPTY),
+                friendsByUser.getOrDefault(Math.toIntExact(secondUserId), EMPTY))));
+    }
+
+    public void onFriendAdded(long userId, long friendId) {
+        int user = Math.toIntExact(userId);
+        int friend = Math.toIntExact(friendId);
+
+        AfterCommit.run(() -> write(() -> {
+            friendsByUser.computeIfAbsent(user, key -> new RoaringBitmap()).add(friend);
+            followersByUser.computeIfAbsent(friend, key -> new RoaringBitmap()).add(user);
+        }));
+    }
+
+    public void onFriendRemoved(long userId, long friendId) {
+        int user = Math.toIntExact(userId);
+        int friend = Math.toIntExact(friendId);
+
+        AfterCommit.run(() -> write(() -> {
+            remove(friendsByUser, user, friend);
+            remove(followersByUser, friend, user);
+        }));
+    }
+
+    public void onUserDeleted(long userId) {
+        int user = Math.toIntExact(userId);
+
+        // строки friendship удаляются в базе каскадно в обе стороны
+        AfterCommit.run(() -> write(() -> {
+            RoaringBitmap friends = friendsByUser.remove(user);
+            if (friends != null) {
+                friends.forEach((IntConsumer) friend -> remove(followersByUser, friend, user));
+            }
+
+            RoaringBitmap followers = followersByUser.remove(user);
+            if (followers != null) {
+                followers.forEach((IntConsumer) follower -> remove(friendsByUser, follower, user));
+            }
+        }));
+    }
+
+    /**
+     * Сбрасывает граф, он будет перечитан из базы при следующем обращении.
+     * Нужен после записи в таблицы в обход приложения, например генератором данных.
+     */
+    public void invalidate() {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                loaded = false;
+                friendsByUser.clear();
+                followersByUser.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private List<Long> read(Supplier<List<Long>> query) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            // до загрузки изменения не нужны - загрузка прочитает их из базы
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static List<Long> toIds(RoaringBitmap bitmap) {
+        return Arrays.stream(bitmap.toArray()).mapToObj(Long::valueOf).toList();
+    }
+
+    private static void remove(Map<Integer, RoaringBitmap> index, int key, int value) {
+        RoaringBitmap bitmap = index.get(key);
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+
+            friendsByUser.clear();
+            followersByUser.clear();
+
+            jdbcTemplate.query("SELECT user1_id, user2_id FROM friendship", (RowCallbackHandler) resultSet -> {
+                int user = Math.toIntExact(resultSet.getLong("user1_id"));
+                int friend = Math.toIntExact(resultSet.getLong("user2_id"));
+                friendsByUser.computeIfAbsent(user, key -> new RoaringBitmap()).add(friend);
+                followersByUser.computeIfAbsent(friend, key -> new RoaringBitmap()).add(user);
+            });
+
+            friendsByUser.values().forEach(RoaringBitmap::runOptimize);
+            followersByUser.values().forEach(RoaringBitmap::runOptimize);
+
+            loaded = true;
+            log.info("Граф дружбы загружен, пользователей с друзьями: {}", friendsByUser.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntConsumer;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Матрица лайков пользователь x фильм в памяти. Строки и столбцы хранятся сжатыми битовыми
+ * множествами (RoaringBitmap), поэтому пересечения и разности считаются без обращения к базе.
+ * Матрица загружается из film_like при первом обращении и обновляется после коммита.
+ * <p>
+ * Соседи ищутся по фильмам пользователя от редких к популярным; перебор прекращается, как только
+ * ещё не встреченные пользователи не могут обогнать найденных, и не превышает
+ * filmorate.recommendations.max-candidates кандидатов - иначе поклонник одного хита перебирал бы
+ * всех его зрителей.
+ */
+@Slf4j
+@Component
+public class LikeMatrix {
+
+    private static final Comparator<Neighbour> BY_SIMILARITY = Comparator.comparingInt(Neighbour::overlap)
+            .thenComparing(Comparator.comparingInt(Neighbour::userId).reversed());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RoaringBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> usersByFilm = new HashMap<>();
+    private volatile boolean loaded;
+
+    public LikeMatrix(JdbcTemplate jdbcTemplate,
+                      @Value("${filmorate.recommendations.max-candidates:10000}") int maxCandidates) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Рекомендации для пользователя: фильмы, которые лайкнули {@code neighbours} самых похожих
+     * пользователей (по числу общих лайков), кроме уже лайкнутых им самим. Фильм получает
+     * вес, равный сумме сходства соседей, лайкнувших его; при равенстве выше фильм с меньшим id.
+     */
+    public List<Long> recommend(long userId, int neighbours) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap liked = filmsByUser.get(Math.toIntExact(userId));
+            if (liked == null || liked.isEmpty()) {
+                return List.of();
+            }
+
+            PriorityQueue<Neighbour> top = nearestNeighbours(Math.toIntExact(userId), liked, neighbours);
+
+            Map<Integer, Long> scores = new HashMap<>();
+            top.forEach(neighbour -> RoaringBitmap.andNot(filmsByUser.get(neighbour.userId()), liked)
+                    .forEach((IntConsumer) filmId -> scores.merge(filmId, (long) neighbour.overlap(), Long::sum)));
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .map(entry -> entry.getKey().longValue())
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возможные ответы прежнего SQL-запроса рекомендаций: он берёт одного самого похожего
+     * пользователя, а при равенстве сходства - любого из них. Используется для сверки.
+     */
+    public List<Set<Long>> recommendationsOfMostSimilar(long userId) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap liked = filmsByUser.get(Math.toIntExact(userId));
+            if (liked == null || liked.isEmpty()) {
+                return List.of(Set.of());
+            }
+
+            List<Neighbour> all = new ArrayList<>();
+            forEachNeighbour(Math.toIntExact(userId), liked, all::add);
+            int best = all.stream().mapToInt(Neighbour::overlap).max().orElse(0);
+
+            if (best == 0) {
+                return List.of(Set.of());
+            }
+
+            return all.stream()
+                    .filter(neighbour -> neighbour.overlap() == best)
+                    .map(neighbour -> RoaringBitmap.andNot(filmsByUser.get(neighbour.userId()), liked).stream()
+                            .mapToObj(Long::valueOf)
+                            .collect(Collectors.toSet()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // id фильмов, которые лайкнули оба пользователя, по возрастанию
+    public List<Long> getCommonFilms(long firstUserId, long secondUserId) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap first = filmsByUser.get(Math.toIntExact(firstUserId));
+            RoaringBitmap second = filmsByUser.get(Math.toIntExact(secondUserId));
+
+            if (first == null || second == null) {
+                return List.of();
+            }
+
+            return RoaringBitmap.and(first, second).stream()
+                    .mapToObj(Long::valueOf)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void onLikeAdded(long userId, long filmId) {
+        int user = Math.toIntExact(userId);
+        int film = Math.toIntExact(filmId);
+
+        AfterCommit.run(() -> write(() -> link(user, film)));
+    }
+
+    public void onLikeRemoved(long userId, long filmId) {
+        int user = Math.toIntExact(userId);
+        int film = Math.toIntExact(filmId);
+
+        AfterCommit.run(() -> write(() -> {
+            remove(filmsByUser, user, film);
+            remove(usersByFilm, film, user);
+        }));
+    }
+
+    public void onUserDeleted(long userId) {
+        int user = Math.toIntExact(userId);
+
+        AfterCommit.run(() -> write(() -> {
+            RoaringBitmap films = filmsByUser.remove(user);
+            if (films != null) {
+                films.forEach((IntConsumer) film -> remove(usersByFilm, film, user));
+            }
+        }));
+    }
+
+    public void onFilmDeleted(long filmId) {
+        int film = Math.toIntExact(filmId);
+
+        AfterCommit.run(() -> write(() -> {
+            RoaringBitmap users = usersByFilm.remove(film);
+            if (users != null) {
+                users.forEach((IntConsumer) user -> remove(filmsByUser, user, film));
+            }
+        }));
+    }
+
+    /**
+     * Сбрасывает матрицу, она будет перечитана из базы при следующем обращении.
+     * Нужна после записи в таблицы в обход приложения, например генератором данных.
+     */
+    public void invalidate() {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                loaded = false;
+                filmsByUser.clear();
+                usersByFilm.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private PriorityQueue<Neighbour> nearestNeighbours(int userId, RoaringBitmap liked, int neighbours) {
+        int[] films = liked.stream()
+                .boxed()
+                .sorted(Comparator.comparingInt(filmId -> usersByFilm.get(filmId).getCardinality()))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        PriorityQueue<Neighbour> top = new PriorityQueue<>(BY_SIMILARITY);
+        RoaringBitmap seen = RoaringBitmap.bitmapOf(userId);
+        int examined = 0;
+
+        for (int i = 0; i < films.length && examined < maxCandidates; i++) {
+            // ещё не встреченные пользователи лайкнули только фильмы с i-го, общих фильмов у них не больше
+            int remaining = films.length - i;
+            if (top.size() == neighbours && top.peek().overlap() > remaining) {
+                break;
+            }
+
+            RoaringBitmap fresh = RoaringBitmap.andNot(usersByFilm.get(films[i]), seen);
+            seen.or(fresh);
+
+            for (Iterator<Integer> iterator = fresh.iterator(); iterator.hasNext() && examined < maxCandidates; ) {
+                int candidate = iterator.next();
+                examined++;
+                top.add(new Neighbour(candidate, RoaringBitmap.andCardinality(liked, filmsByUser.get(candidate))));
+                if (top.size() > neighbours) {
+                    top.poll();
+                }
+            }
+        }
+
+        if (examined >= maxCandidates) {
+            log.debug("Поиск соседей пользователя {} остановлен на {} кандидатах", userId, examined);
+        }
+        return top;
+    }
+
+    // полный перебор всех пользователей с общими лайками, для сверки
+    private void forEachNeighbour(int userId, RoaringBitmap liked, Consumer<Neighbour> action) {
+        // кандидаты - только пользователи, лайкнувшие хотя бы один фильм из списка
+        RoaringBitmap candidates = new RoaringBitmap();
+        liked.forEach((IntConsumer) filmId -> candidates.or(usersByFilm.get(filmId)));
+        candidates.remove(userId);
+
+        candidates.forEach((IntConsumer) candidate -> action.accept(
+                new Neighbour(candidate, RoaringBitmap.andCardinality(liked, filmsByUser.get(candidate)))));
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            // до загрузки изменения не нужны - загрузка прочитает их из базы
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void link(int userId, int filmId) {
+        filmsByUser.computeIfAbsent(userId, key -> new RoaringBitmap()).add(filmId);
+        usersByFilm.computeIfAbsent(filmId, key -> new RoaringBitmap()).add(userId);
+    }
+
+    private static void remove(Map<Integer, RoaringBitmap> index, int key, int value) {
+        RoaringBitmap bitmap = index.get(key);
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+
+            filmsByUser.clear();
+            usersByFilm.clear();
+
+            jdbcTemplate.query("SELECT user_id, film_id FROM film_like", (RowCallbackHandler) resultSet ->
+                    link(Math.toIntExact(resultSet.getLong("user_id")), Math.toIntExact(resultSet.getLong("film_id"))));
+
+            filmsByUser.values().forEach(RoaringBitmap::runOptimize);
+            usersByFilm.values().forEach(RoaringBitmap::runOptimize);
+
+            loaded = true;
+            log.info("Матрица лайков загружена, пользователей: {}, фильмов: {}",
+                    filmsByUser.size(), usersByFilm.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private record Neighbour(int userId, int overlap) {
+    }
+}
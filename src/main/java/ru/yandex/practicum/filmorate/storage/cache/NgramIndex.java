@@ -0,0 +1,174 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Триграммный инвертированный индекс строк для поиска подстроки без учёта регистра,
+ * как ILIKE '%q%'. Для каждой триграммы хранится отсортированный список id строк, в которых
+ * она встречается. Кандидаты получаются пересечением списков триграмм запроса и затем
+ * проверяются на точное вхождение, поэтому результат совпадает с SQL.
+ * Класс не потокобезопасен, синхронизация на стороне владельца.
+ */
+final class NgramIndex {
+
+    private static final int GRAM_SIZE = 3;
+
+    private final Map<Integer, String> texts = new HashMap<>();
+    private final Map<Long, PostingList> postings = new HashMap<>();
+
+    void put(int id, String text) {
+        remove(id);
+
+        if (text == null) {
+            return;
+        }
+
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (long gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, key -> new PostingList()).add(id);
+        }
+    }
+
+    void remove(int id) {
+        String old = texts.remove(id);
+
+        if (old == null) {
+            return;
+        }
+
+        for (long gram : grams(old)) {
+            PostingList list = postings.get(gram);
+            list.remove(id);
+            if (list.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    void clear() {
+        texts.clear();
+        postings.clear();
+    }
+
+    /**
+     * Возвращает id строк, содержащих запрос. Запросы короче триграммы не покрываются
+     * индексом и проверяются перебором строк в памяти.
+     */
+    int[] search(String query) {
+        String normalized = normalize(query);
+
+        if (normalized.length() < GRAM_SIZE) {
+            return texts.entrySet().stream()
+                    .filter(entry -> entry.getValue().contains(normalized))
+                    .mapToInt(Map.Entry::getKey)
+                    .toArray();
+        }
+
+        List<PostingList> lists = Arrays.stream(grams(normalized))
+                .mapToObj(postings::get)
+                .toList();
+
+        if (lists.contains(null)) {
+            return new int[0];
+        }
+
+        List<PostingList> sorted = lists.stream()
+                .sorted(Comparator.comparingInt(PostingList::size))
+                .toList();
+        PostingList smallest = sorted.get(0);
+
+        return smallest.stream()
+                .filter(id -> sorted.stream().skip(1).allMatch(list -> list.contains(id)))
+                .filter(id -> Objects.requireNonNull(texts.get(id)).contains(normalized))
+                .toArray();
+    }
+
+    int size() {
+        return texts.size();
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    // триграмма упаковывается в long: по 16 бит на символ
+    private static long[] grams(String text) {
+        if (text.length() < GRAM_SIZE) {
+            return new long[0];
+        }
+
+        return IntStream.rangeClosed(0, text.length() - GRAM_SIZE)
+                .mapToLong(i -> ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2))
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * Отсортированный список id на примитивном массиве. id фильмов растут, поэтому вставка
+     * почти всегда дописывает в конец.
+     */
+    private static final class PostingList {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+
+            int insertAt = -position - 1;
+            ensureCapacity();
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return;
+            }
+
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        IntStream stream() {
+            return Arrays.stream(ids, 0, size);
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+        }
+    }
+}
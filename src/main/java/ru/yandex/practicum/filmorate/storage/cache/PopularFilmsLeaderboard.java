@@ -0,0 +1,341 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рейтинг популярных фильмов в памяти для GET /films/popular.
+ * В памяти хранятся год выпуска, жанры и число лайков каждого фильма, а для запрошенных корзин
+ * (жанр, год) - только первые {@code capacity} фильмов, упорядоченные по числу лайков и id, как
+ * в SQL-запросе. Корзина строится при первом запросе к ней и дальше обновляется по событиям
+ * лайков и изменения фильмов после коммита транзакции.
+ * <p>
+ * Для каждой корзины известен фильм, выше которого в том же порядке не стоит ни один фильм,
+ * не попавший в неё. Пока первые {@code count} фильмов корзины стоят выше этой границы, ответ
+ * точен; иначе (например, лидер потерял лайки) корзина перестраивается по фильмам в памяти.
+ */
+@Slf4j
+@Component
+public class PopularFilmsLeaderboard {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // упорядочивает чтение счётчика лайков из базы и его применение, см. refreshLikes
+    private final Lock likesLock = new ReentrantLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<Bucket, Ranking> rankings = new HashMap<>();
+    private volatile boolean loaded;
+
+    public PopularFilmsLeaderboard(JdbcTemplate jdbcTemplate,
+                                   @Value("${filmorate.popular.leaderboard-size:100}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Возвращает id самых популярных фильмов корзины или пустой Optional,
+     * если запрошено больше фильмов, чем отдаётся из памяти.
+     */
+    public Optional<List<Long>> getTop(long count, Long genreId, Long year) {
+        if (count > capacity) {
+            return Optional.empty();
+        }
+
+        ensureLoaded();
+        Bucket bucket = new Bucket(genreId, year == null ? null : year.intValue());
+
+        lock.readLock().lock();
+        try {
+            Ranking ranking = rankings.get(bucket);
+            List<Long> top = ranking == null ? null : ranking.top(count);
+            if (top != null) {
+                return Optional.of(top);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                // рейтинг сбросили между чтением и перестройкой - ответит база
+                return Optional.empty();
+            }
+
+            Ranking ranking = rankings.get(bucket);
+            List<Long> top = ranking == null ? null : ranking.top(count);
+            if (top == null) {
+                ranking = build(bucket);
+                rankings.put(bucket, ranking);
+                // у только что построенной корзины все фильмы вне её стоят ниже оставленных,
+                // поэтому ответ точен; пустой Optional здесь - лишь страховка, ответит база
+                top = ranking.top(count);
+            }
+            return Optional.ofNullable(top);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Счётчик лайков не увеличивается на разницу, а перечитывается из базы после коммита:
+     * повторное применение события или загрузка рейтинга, уже видевшая этот коммит,
+     * не приводят к двойному учёту.
+     */
+    public void onLikesChanged(long filmId) {
+        AfterCommit.run(() -> refreshLikes(filmId));
+    }
+
+    public void onFilmSaved(long filmId, LocalDate releaseDate, Collection<Long> genreIds) {
+        Integer year = releaseDate == null ? null : releaseDate.getYear();
+        long[] genres = genreIds.stream().distinct().mapToLong(Long::longValue).toArray();
+
+        AfterCommit.run(() -> write(() -> {
+            Entry old = entries.get(filmId);
+            replace(old, new Entry(filmId, old == null ? 0 : old.likes(), year, genres));
+        }));
+    }
+
+    public void onFilmDeleted(long filmId) {
+        AfterCommit.run(() -> write(() -> replace(entries.get(filmId), null)));
+    }
+
+    /**
+     * Сбрасывает рейтинг, он будет перечитан из базы при следующем запросе.
+     * Нужен после массовых изменений лайков, например удаления пользователя.
+     */
+    public void invalidate() {
+        AfterCommit.run(() -> {
+            lock.writeLock().lock();
+            try {
+                loaded = false;
+                entries.clear();
+                rankings.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // чтение и применение под одной блокировкой: более позднее событие всегда читает более новое значение.
+    // Загрузка держит ту же блокировку, поэтому событие применяется либо после неё, либо до её начала -
+    // и тогда загрузка сама прочитает уже закоммиченный счётчик
+    private void refreshLikes(long filmId) {
+        likesLock.lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+
+            String likesQuery = "SELECT likes_count FROM films WHERE id = ?";
+            List<Long> likes = jdbcTemplate.queryForList(likesQuery, Long.class, filmId);
+
+            write(() -> {
+                Entry old = entries.get(filmId);
+                if (old != null && !likes.isEmpty()) {
+                    replace(old, old.withLikes(likes.get(0)));
+                }
+            });
+        } finally {
+            likesLock.unlock();
+        }
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            // до загрузки изменения не нужны - загрузка прочитает их из базы
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        likesLock.lock();
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                return;
+            }
+
+            String genresQuery = "SELECT film_id, genre_id FROM film_genre";
+            Map<Long, Set<Long>> genresByFilm = new HashMap<>();
+            jdbcTemplate.query(genresQuery, (RowCallbackHandler) resultSet -> genresByFilm
+                    .computeIfAbsent(resultSet.getLong("film_id"), id -> new HashSet<>())
+                    .add(resultSet.getLong("genre_id")));
+
+            String filmsQuery = "SELECT id, releaseDate, likes_count FROM films";
+            jdbcTemplate.query(filmsQuery, (RowCallbackHandler) resultSet -> {
+                long filmId = resultSet.getLong("id");
+                LocalDate releaseDate = resultSet.getObject("releaseDate", LocalDate.class);
+                long[] genres = genresByFilm.getOrDefault(filmId, Set.of()).stream()
+                        .mapToLong(Long::longValue)
+                        .toArray();
+
+                entries.put(filmId, new Entry(filmId, resultSet.getLong("likes_count"),
+                        releaseDate == null ? null : releaseDate.getYear(), genres));
+            });
+
+            loaded = true;
+            log.info("Рейтинг популярных фильмов загружен, фильмов: {}", entries.size());
+        } finally {
+            lock.writeLock().unlock();
+            likesLock.unlock();
+        }
+    }
+
+    private Ranking build(Bucket bucket) {
+        Ranking ranking = new Ranking(capacity);
+        entries.values().stream()
+                .filter(entry -> entry.belongsTo(bucket))
+                .forEach(entry -> ranking.update(null, entry));
+
+        log.debug("Корзина рейтинга {} построена, фильмов в ней: {}", bucket, ranking.size());
+        return ranking;
+    }
+
+    // old == null - новый фильм, updated == null - удалённый
+    private void replace(Entry old, Entry updated) {
+        if (old != null) {
+            entries.remove(old.filmId());
+        }
+        if (updated != null) {
+            entries.put(updated.filmId(), updated);
+        }
+
+        Set<Bucket> affected = new HashSet<>();
+        if (old != null) {
+            affected.addAll(old.buckets());
+        }
+        if (updated != null) {
+            affected.addAll(updated.buckets());
+        }
+
+        affected.forEach(bucket -> {
+            Ranking ranking = rankings.get(bucket);
+            if (ranking != null) {
+                ranking.update(old != null && old.belongsTo(bucket) ? old : null,
+                        updated != null && updated.belongsTo(bucket) ? updated : null);
+            }
+        });
+    }
+
+    private record Bucket(Long genreId, Integer year) {
+    }
+
+    private record Entry(long filmId, long likes, Integer year, long[] genreIds) {
+
+        Entry withLikes(long newLikes) {
+            return new Entry(filmId, newLikes, year, genreIds);
+        }
+
+        boolean belongsTo(Bucket bucket) {
+            if (bucket.year() != null && !bucket.year().equals(year)) {
+                return false;
+            }
+            return bucket.genreId() == null || Arrays.stream(genreIds).anyMatch(id -> id == bucket.genreId());
+        }
+
+        List<Bucket> buckets() {
+            List<Bucket> result = new ArrayList<>(2 + genreIds.length * 2);
+            result.add(new Bucket(null, null));
+            if (year != null) {
+                result.add(new Bucket(null, year));
+            }
+            for (long genreId : genreIds) {
+                result.add(new Bucket(genreId, null));
+                if (year != null) {
+                    result.add(new Bucket(genreId, year));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Первые фильмы корзины. bestOutside - граница в порядке ORDER: ни один фильм корзины,
+     * не попавший в films, не стоит выше неё; null, если в корзине нет других фильмов.
+     */
+    private static final class Ranking {
+
+        private final int capacity;
+        private final NavigableSet<Entry> films = new TreeSet<>(ORDER);
+        private Entry bestOutside;
+
+        Ranking(int capacity) {
+            this.capacity = capacity;
+        }
+
+        int size() {
+            return films.size();
+        }
+
+        // null, если первые count фильмов по данным корзины нельзя назвать точно
+        List<Long> top(long count) {
+            List<Long> result = new ArrayList<>((int) count);
+            Iterator<Entry> iterator = films.iterator();
+
+            while (iterator.hasNext() && result.size() < count) {
+                Entry entry = iterator.next();
+                // фильм вне корзины мог бы стоять выше этого - порядок тот же, что в SQL: лайки, затем id
+                if (bestOutside != null && ORDER.compare(entry, bestOutside) >= 0) {
+                    return null;
+                }
+                result.add(entry.filmId());
+            }
+
+            return result.size() == count || bestOutside == null ? result : null;
+        }
+
+        void update(Entry old, Entry updated) {
+            if (old != null) {
+                films.remove(old);
+            }
+            if (updated == null) {
+                return;
+            }
+
+            films.add(updated);
+            if (films.size() > capacity) {
+                Entry evicted = films.pollLast();
+                if (bestOutside == null || ORDER.compare(evicted, bestOutside) < 0) {
+                    bestOutside = evicted;
+                }
+            }
+        }
+    }
+}
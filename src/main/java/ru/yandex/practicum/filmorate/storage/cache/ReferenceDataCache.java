@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш небольшого справочника (mpa, genres), целиком хранящийся в памяти.
+ * Данные лежат в неизменяемом снимке - массиве, индексированном по id, поэтому поиск
+ * не обращается к базе и не создаёт объектов. При изменении таблицы снимок пересобирается
+ * и подменяется целиком, читатели всегда видят согласованное состояние.
+ */
+@Slf4j
+public class ReferenceDataCache<T> implements MeterBinder {
+
+    private static final long MISS_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final ToLongFunction<T> idExtractor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceDataCache(String name, Supplier<List<T>> loader, ToLongFunction<T> idExtractor) {
+        this.name = name;
+        this.loader = loader;
+        this.idExtractor = idExtractor;
+    }
+
+    public T get(long id) {
+        T value = current().get(id);
+
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+
+        misses.increment();
+
+        // строки могли добавить в таблицу в обход приложения - перечитываем, но не чаще раза в секунду
+        Snapshot<T> stale = snapshot;
+        if (System.nanoTime() - stale.builtAt() > MISS_REFRESH_INTERVAL_NANOS) {
+            return rebuild(stale).get(id);
+        }
+
+        return null;
+    }
+
+    public boolean contains(long id) {
+        return get(id) != null;
+    }
+
+    public List<T> getAll() {
+        hits.increment();
+        return current().values();
+    }
+
+    public void refresh() {
+        rebuild(snapshot);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("filmorate.reference.cache.hits", this, ReferenceDataCache::getHits)
+                .tag("table", name)
+                .register(registry);
+        FunctionCounter.builder("filmorate.reference.cache.misses", this, ReferenceDataCache::getMisses)
+                .tag("table", name)
+                .register(registry);
+        FunctionCounter.builder("filmorate.reference.cache.rebuilds", this, ReferenceDataCache::getRebuilds)
+                .tag("table", name)
+                .register(registry);
+    }
+
+    private Snapshot<T> current() {
+        Snapshot<T> current = snapshot;
+        return current != null ? current : rebuild(null);
+    }
+
+    private synchronized Snapshot<T> rebuild(Snapshot<T> expected) {
+        // пока ждали монитор, снимок мог пересобрать другой поток
+        if (snapshot != expected) {
+            return snapshot;
+        }
+
+        List<T> values = List.copyOf(loader.get());
+        long maxId = values.stream().mapToLong(idExtractor).max().orElse(0);
+        Object[] byId = new Object[(int) maxId + 1];
+        values.forEach(value -> byId[(int) idExtractor.applyAsLong(value)] = value);
+
+        snapshot = new Snapshot<>(byId, values, System.nanoTime());
+        rebuilds.increment();
+        log.info("Кэш справочника {} пересобран, записей: {}", name, values.size());
+        return snapshot;
+    }
+
+    private record Snapshot<T>(Object[] byId, List<T> values, long builtAt) {
+
+        @SuppressWarnings("unchecked")
+        T get(long id) {
+            return id >= 0 && id < byId.length ? (T) byId[(int) id] : null;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+import ru.yandex.practicum.filmorate.storage.cache.AfterCommit;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Запись событий ленты в таблицу feed.
+ * В режиме sync событие вставляется сразу в потоке вызывающего, в той же транзакции.
+ * В режиме async событие после коммита кладётся в ограниченную очередь, а фоновый поток
+ * записывает очередь пачками через batch insert. Если очередь заполнена, событие пишется
+ * синхронно - так вызывающий сам притормаживает, а события не теряются.
+ * Пачка из очереди пишется в одной транзакции. Если какую-то строку записать нельзя (например,
+ * автора события успели удалить), пачка повторяется по одной строке: отбрасываются только
+ * ошибочные события, остальные записываются и раскладываются по лентам.
+ * При остановке приложения очередь дописывается до конца.
+ */
+@Slf4j
+@Component
+public class FeedWriter implements SmartLifecycle {
+
+    private static final String INSERT_QUERY = "INSERT INTO feed(entity_id, user_id, time_stamp, event_type, " +
+            "operation) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimelineStorage timelineStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean async;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<Feed> queue;
+
+    // порядок записи пачек должен совпадать с порядком событий, поэтому выборка из очереди и запись идут под замком
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter backpressure;
+    private final Counter dropped;
+
+    private volatile Thread writerThread;
+    private volatile boolean running;
+
+    public FeedWriter(JdbcTemplate jdbcTemplate, TimelineStorage timelineStorage,
+                      PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                      @Value("${filmorate.feed.write-mode:async}") String writeMode,
+                      @Value("${filmorate.feed.queue-capacity:10000}") int queueCapacity,
+                      @Value("${filmorate.feed.batch-size:500}") int batchSize,
+                      @Value("${filmorate.feed.flush-interval-ms:50}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timelineStorage = timelineStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.async = "async".equalsIgnoreCase(writeMode);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("filmorate.feed.queue.size", queue, BlockingQueue::size)
+                .description("Событий ленты в очереди на запись")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("filmorate.feed.flush")
+                .description("Время записи пачки событий ленты")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("filmorate.feed.flush.batch")
+                .description("Размер пачки событий ленты")
+                .register(meterRegistry);
+        this.backpressure = Counter.builder("filmorate.feed.backpressure")
+                .description("События, записанные синхронно из-за заполненной очереди")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("filmorate.feed.dropped")
+                .description("События, которые не удалось записать")
+                .register(meterRegistry);
+    }
+
+    public void write(Feed feed) {
+        if (!async || !running) {
+            insert(List.of(feed));
+            return;
+        }
+
+        AfterCommit.run(() -> enqueue(feed));
+    }
+
+    /**
+     * Дописывает из очереди события указанных пользователей, остальные остаются фоновому потоку.
+     * Вызывается перед чтением ленты, чтобы пользователь видел свои только что совершённые действия,
+     * а запрос не платил за запись чужих событий.
+     */
+    public void flush(Collection<Long> userIds) {
+        if (queue.isEmpty() || userIds.isEmpty()) {
+            return;
+        }
+
+        Set<Long> authors = new HashSet<>(userIds);
+
+        flushLock.lock();
+        try {
+            // под замком фоновый поток не пишет, поэтому события пользователя не обгонят записанные раньше
+            List<Feed> pending = new ArrayList<>();
+            for (Iterator<Feed> iterator = queue.iterator(); iterator.hasNext(); ) {
+                Feed feed = iterator.next();
+                if (authors.contains(feed.getUserId())) {
+                    pending.add(feed);
+                    iterator.remove();
+                }
+            }
+
+            if (!pending.isEmpty()) {
+                writeQueued(pending);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+
+        if (async) {
+            writerThread = new Thread(this::runWriter, "feed-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        drain(Integer.MAX_VALUE);
+        log.info("Запись ленты остановлена, очередь дописана");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void enqueue(Feed feed) {
+        // приложение могло начать остановку, пока шла транзакция, - очередь уже дописана
+        if (!running || !queue.offer(feed)) {
+            backpressure.increment();
+            // сохраняем порядок: сначала всё, что уже в очереди, потом новое событие
+            flushLock.lock();
+            try {
+                drainLocked(Integer.MAX_VALUE);
+                insert(List.of(feed));
+            } finally {
+                flushLock.unlock();
+            }
+            return;
+        }
+
+        if (queue.size() >= batchSize) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
+            if (drain(batchSize) < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    private int drain(int maxEvents) {
+        flushLock.lock();
+        try {
+            return drainLocked(maxEvents);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int drainLocked(int maxEvents) {
+        int written = 0;
+        List<Feed> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+
+        while (written < maxEvents && queue.drainTo(batch, Math.min(batchSize, maxEvents - written)) > 0) {
+            writeQueued(batch);
+            written += batch.size();
+            batch.clear();
+        }
+
+        return written;
+    }
+
+    private void insert(List<Feed> batch) {
+        timelineStorage.fanOut(insertRows(batch));
+    }
+
+    // события из очереди принадлежат уже завершённым операциям, вернуть ошибку некому
+    private void writeQueued(List<Feed> batch) {
+        List<Feed> written;
+        try {
+            written = transactionTemplate.execute(status -> insertRows(batch));
+        } catch (RuntimeException e) {
+            log.warn("Пачка из {} событий ленты не записана ({}), запись по одному", batch.size(), e.getMessage());
+            written = insertOneByOne(batch);
+        }
+
+        try {
+            timelineStorage.fanOut(written);
+        } catch (RuntimeException e) {
+            log.error("Не удалось разложить по лентам {} событий: {}", written.size(), e.getMessage());
+        }
+    }
+
+    private List<Feed> insertOneByOne(List<Feed> batch) {
+        List<Feed> written = new ArrayList<>(batch.size());
+
+        for (Feed feed : batch) {
+            try {
+                written.addAll(insertRows(List.of(feed)));
+            } catch (RuntimeException e) {
+                dropped.increment();
+                log.error("Не удалось записать событие ленты пользователя {}: {}", feed.getUserId(), e.getMessage());
+            }
+        }
+
+        return written;
+    }
+
+    // вставляет события и возвращает их с присвоенными id
+    private List<Feed> insertRows(List<Feed> batch) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        flushTimer.record(() -> jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_QUERY, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        Feed feed = batch.get(i);
+                        stmt.setLong(1, feed.getEntityId());
+                        stmt.setLong(2, feed.getUserId());
+                        stmt.setLong(3, feed.getTimestamp());
+                        stmt.setString(4, feed.getEventType().toString());
+                        stmt.setString(5, feed.getOperation().toString());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keyHolder));
+        batchSizes.record(batch.size());
+
+        // id событий нужны лентам друзей
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Feed> written = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Number id = (Number) keys.get(i).values().iterator().next();
+            written.add(batch.get(i).toBuilder().eventId(id.longValue()).build());
+        }
+
+        return written;
+    }
+}
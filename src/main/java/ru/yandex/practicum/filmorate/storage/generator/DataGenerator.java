@@ -0,0 +1,407 @@
+package ru.yandex.practicum.filmorate.storage.generator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.cache.PopularFilmsLeaderboard;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntSupplier;
+
+/**
+ * Генератор синтетических данных для нагрузочных прогонов и бенчмарков. Популярность
+ * фильмов, жанров и пользователей распределена по закону Ципфа: немногие фильмы собирают
+ * большую часть лайков, у немногих пользователей больше всего подписчиков. Данные
+ * сначала строятся в памяти, затем пишутся пачками JDBC-вставок; счётчики лайков
+ * и полезность отзывов считаются заранее и пишутся вместе со строками.
+ * Одинаковые настройки всегда дают одни и те же данные.
+ * При старте приложения генератор запускается только с filmorate.generator.enabled=true
+ * и только если все заполняемые таблицы пусты.
+ */
+@Slf4j
+@Component
+public class DataGenerator implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int GENRES_PER_FILM = 2;
+    private static final int MPA = 5;
+    private static final long FIRST_EVENT = 1_600_000_000_000L;
+    private static final long EVENTS_PERIOD = 365L * 24 * 60 * 60 * 1000;
+
+    // таблицы, которые генератор заполняет с нуля; жанры дополняются к справочным
+    private static final List<String> GENERATED_TABLES = List.of("users", "films", "directors", "film_genre",
+            "film_director", "friendship", "film_like", "reviews", "useful", "feed", "timeline");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimelineStorage timelineStorage;
+    private final GenreStorage genreStorage;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final FriendGraph friendGraph;
+    private final FilmSearchIndex searchIndex;
+    private final boolean enabled;
+    private final Settings settings;
+
+    public DataGenerator(JdbcTemplate jdbcTemplate, TimelineStorage timelineStorage, GenreStorage genreStorage,
+                         PopularFilmsLeaderboard leaderboard, LikeMatrix likeMatrix, FriendGraph friendGraph,
+                         FilmSearchIndex searchIndex,
+                         @Value("${filmorate.generator.enabled:false}") boolean enabled,
+                         @Value("${filmorate.generator.users:100000}") int users,
+                         @Value("${filmorate.generator.films:10000}") int films,
+                         @Value("${filmorate.generator.genres:20}") int genres,
+                         @Value("${filmorate.generator.directors:500}") int directors,
+                         @Value("${filmorate.generator.likes-per-user:10}") int likesPerUser,
+                         @Value("${filmorate.generator.friends-per-user:10}") int friendsPerUser,
+                         @Value("${filmorate.generator.reviews:20000}") int reviews,
+                         @Value("${filmorate.generator.reactions-per-review:5}") int reactionsPerReview,
+                         @Value("${filmorate.generator.zipf-exponent:1.0}") double zipfExponent,
+                         @Value("${filmorate.generator.seed:42}") long seed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.timelineStorage = timelineStorage;
+        this.genreStorage = genreStorage;
+        this.leaderboard = leaderboard;
+        this.likeMatrix = likeMatrix;
+        this.friendGraph = friendGraph;
+        this.searchIndex = searchIndex;
+        this.enabled = enabled;
+        this.settings = new Settings(users, films, genres, directors, likesPerUser, friendsPerUser, reviews,
+                reactionsPerReview, zipfExponent, seed);
+    }
+
+    /**
+     * Настройки генерации. Фильмов, отзывов, лайков и друзей должно хватать, чтобы выбрать
+     * нужное число разных значений для каждого пользователя. genres - общее число жанров:
+     * к справочным добавляются недостающие.
+     */
+    public record Settings(int users, int films, int genres, int directors, int likesPerUser, int friendsPerUser,
+                           int reviews, int reactionsPerReview, double zipfExponent, long seed) {
+
+        // пропорции по умолчанию для заданного числа пользователей
+        public static Settings forUsers(int users) {
+            int films = Math.max(100, users / 10);
+            return new Settings(users, films, 20, Math.max(10, films / 20), 10, Math.min(10, users - 1),
+                    films * 2, Math.min(5, users), 1.0, 42);
+        }
+
+        public Settings withGenres(int genres) {
+            return new Settings(users, films, genres, directors, likesPerUser, friendsPerUser, reviews,
+                    reactionsPerReview, zipfExponent, seed);
+        }
+    }
+
+    /**
+     * Id сгенерированных строк, по возрастанию. Жанры - все жанры, к которым относятся фильмы.
+     */
+    public record Dataset(int[] userIds, int[] filmIds, int[] genreIds, int[] reviewIds) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        List<String> filled = filledTables();
+        if (!filled.isEmpty()) {
+            log.warn("Генерация данных пропущена: в базе уже есть данные в таблицах {}", filled);
+            return;
+        }
+
+        generate(settings);
+    }
+
+    /**
+     * Заполняет пустую базу. Id вставленных строк перечитываются из базы, поэтому
+     * генератор не зависит от текущих значений identity-счётчиков.
+     */
+    public Dataset generate(Settings settings) {
+        List<String> filled = filledTables();
+        if (!filled.isEmpty()) {
+            throw new IllegalStateException("Генератор заполняет только пустую базу, заняты таблицы " + filled);
+        }
+
+        log.info("Генерация данных: {}", settings);
+        long started = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(settings.seed());
+
+        int users = settings.users();
+        int films = settings.films();
+
+        if (settings.likesPerUser() > films || settings.friendsPerUser() >= users
+                || settings.reactionsPerReview() > users || settings.genres() < 1 || settings.directors() < 1) {
+            throw new IllegalArgumentException("Недостаточно фильмов, пользователей или жанров для настроек "
+                    + settings);
+        }
+
+        Zipf filmPopularity = new Zipf(films, settings.zipfExponent());
+        Zipf userPopularity = new Zipf(users, settings.zipfExponent());
+        Zipf genrePopularity = new Zipf(settings.genres(), settings.zipfExponent());
+
+        int genresPerFilm = Math.min(GENRES_PER_FILM, settings.genres());
+        int[] filmGenres = pickDistinct(films, genresPerFilm, false, () -> genrePopularity.sample(random));
+
+        int[] likedFilms = pickDistinct(users, settings.likesPerUser(), false, () -> filmPopularity.sample(random));
+        int[] likesCount = new int[films];
+        for (int film : likedFilms) {
+            likesCount[film]++;
+        }
+
+        int[] friends = pickDistinct(users, settings.friendsPerUser(), true, () -> userPopularity.sample(random));
+
+        int[] reviewFilms = new int[settings.reviews()];
+        int[] reviewAuthors = new int[settings.reviews()];
+        for (int i = 0; i < settings.reviews(); i++) {
+            reviewFilms[i] = filmPopularity.sample(random);
+            reviewAuthors[i] = random.nextInt(users);
+        }
+
+        int[] reactors = pickDistinct(settings.reviews(), settings.reactionsPerReview(), false,
+                () -> random.nextInt(users));
+        boolean[] reactionIsLike = new boolean[reactors.length];
+        int[] useful = new int[settings.reviews()];
+        for (int i = 0; i < reactors.length; i++) {
+            reactionIsLike[i] = random.nextInt(4) != 0;
+            useful[i / settings.reactionsPerReview()] += reactionIsLike[i] ? 1 : -1;
+        }
+
+        int[] genreIds = ensureGenres(settings.genres());
+
+        batchInsert("users", "INSERT INTO users(email, login, name, birthday) VALUES (?, ?, ?, ?)", users,
+                (stmt, i) -> {
+                    stmt.setString(1, "user" + (i + 1) + "@mail.ru");
+                    stmt.setString(2, "user" + (i + 1));
+                    stmt.setString(3, "Пользователь " + (i + 1));
+                    stmt.setDate(4, Date.valueOf(LocalDate.of(1960, 1, 1).plusDays(i % 15_000)));
+                });
+        int[] userIds = readIds("users");
+
+        batchInsert("films", "INSERT INTO films(name, description, releaseDate, duration, mpa_id, likes_count) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", films, (stmt, i) -> {
+                    stmt.setString(1, "Фильм " + (i + 1));
+                    stmt.setString(2, "Описание фильма " + (i + 1));
+                    stmt.setDate(3, Date.valueOf(LocalDate.of(1950 + i % 75, 1 + i % 12, 1 + i % 28)));
+                    stmt.setInt(4, 80 + i % 100);
+                    stmt.setInt(5, 1 + i % MPA);
+                    stmt.setInt(6, likesCount[i]);
+                });
+        int[] filmIds = readIds("films");
+
+        batchInsert("directors", "INSERT INTO directors(name) VALUES (?)", settings.directors(),
+                (stmt, i) -> stmt.setString(1, "Режиссёр " + (i + 1)));
+        int[] directorIds = readIds("directors");
+
+        batchInsert("film_genre", "INSERT INTO film_genre(film_id, genre_id) VALUES (?, ?)", filmGenres.length,
+                (stmt, i) -> {
+                    stmt.setInt(1, filmIds[i / genresPerFilm]);
+                    stmt.setInt(2, genreIds[filmGenres[i]]);
+                });
+
+        int directors = settings.directors();
+        batchInsert("film_director", "INSERT INTO film_director(film_id, director_id) VALUES (?, ?)", films,
+                (stmt, i) -> {
+                    stmt.setInt(1, filmIds[i]);
+                    stmt.setInt(2, directorIds[i % directors]);
+                });
+
+        int friendsPerUser = settings.friendsPerUser();
+        batchInsert("friendship", "INSERT INTO friendship(user1_id, user2_id) VALUES (?, ?)", friends.length,
+                (stmt, i) -> {
+                    stmt.setInt(1, userIds[i / friendsPerUser]);
+                    stmt.setInt(2, userIds[friends[i]]);
+                });
+
+        int likesPerUser = settings.likesPerUser();
+        batchInsert("film_like", "INSERT INTO film_like(user_id, film_id) VALUES (?, ?)", likedFilms.length,
+                (stmt, i) -> {
+                    stmt.setInt(1, userIds[i / likesPerUser]);
+                    stmt.setInt(2, filmIds[likedFilms[i]]);
+                });
+
+        batchInsert("reviews", "INSERT INTO reviews(content, is_positive, user_id, film_id, useful) " +
+                "VALUES (?, ?, ?, ?, ?)", settings.reviews(), (stmt, i) -> {
+                    stmt.setString(1, "Отзыв " + (i + 1));
+                    stmt.setBoolean(2, i % 3 != 0);
+                    stmt.setInt(3, userIds[reviewAuthors[i]]);
+                    stmt.setInt(4, filmIds[reviewFilms[i]]);
+                    stmt.setInt(5, useful[i]);
+                });
+        int[] reviewIds = readIds("reviews");
+
+        int reactionsPerReview = settings.reactionsPerReview();
+        batchInsert("useful", "INSERT INTO useful(review_id, is_like, user_id) VALUES (?, ?, ?)", reactors.length,
+                (stmt, i) -> {
+                    stmt.setInt(1, reviewIds[i / reactionsPerReview]);
+                    stmt.setBoolean(2, reactionIsLike[i]);
+                    stmt.setInt(3, userIds[reactors[i]]);
+                });
+
+        // в ленту попадают те же действия, что пишет приложение: лайки, друзья и отзывы
+        int events = likedFilms.length + friends.length + settings.reviews();
+        batchInsert("feed", "INSERT INTO feed(entity_id, user_id, time_stamp, event_type, operation) " +
+                "VALUES (?, ?, ?, ?, ?)", events, (stmt, i) -> {
+                    EventType type;
+                    int userId;
+                    int entityId;
+                    if (i < likedFilms.length) {
+                        type = EventType.LIKE;
+                        userId = userIds[i / likesPerUser];
+                        entityId = filmIds[likedFilms[i]];
+                    } else if (i < likedFilms.length + friends.length) {
+                        int k = i - likedFilms.length;
+                        type = EventType.FRIEND;
+                        userId = userIds[k / friendsPerUser];
+                        entityId = userIds[friends[k]];
+                    } else {
+                        int k = i - likedFilms.length - friends.length;
+                        type = EventType.REVIEW;
+                        userId = userIds[reviewAuthors[k]];
+                        entityId = reviewIds[k];
+                    }
+                    stmt.setInt(1, entityId);
+                    stmt.setInt(2, userId);
+                    // разбрасываем события по периоду, чтобы типы действий перемешались во времени
+                    stmt.setLong(3, FIRST_EVENT + Long.remainderUnsigned(i * 0x9E3779B97F4A7C15L, EVENTS_PERIOD));
+                    stmt.setString(4, type.toString());
+                    stmt.setString(5, Operation.ADD.toString());
+                });
+
+        // кэши в памяти не видели вставок в обход приложения; граф дружбы нужен перестройке лент
+        friendGraph.invalidate();
+        likeMatrix.invalidate();
+        searchIndex.invalidate();
+        leaderboard.invalidate();
+        timelineStorage.rebuild();
+
+        log.info("Генерация данных завершена за {} мс", (System.nanoTime() - started) / 1_000_000);
+        return new Dataset(userIds, filmIds, genreIds, reviewIds);
+    }
+
+    private List<String> filledTables() {
+        return GENERATED_TABLES.stream()
+                .filter(table -> Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class)))
+                .toList();
+    }
+
+    // id строк таблицы в порядке вставки: таблица была пуста, а identity только растёт
+    private int[] readIds(String table) {
+        return jdbcTemplate.queryForList("SELECT id FROM " + table + " ORDER BY id", Integer.class).stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Возвращает id первых count жанров, при необходимости добавив недостающие к справочным.
+     */
+    private int[] ensureGenres(int count) {
+        int existing = readIds("genres").length;
+        if (existing < count) {
+            batchInsert("genres", "INSERT INTO genres(name) VALUES (?)", count - existing,
+                    (stmt, i) -> stmt.setString(1, "Жанр " + (existing + i + 1)));
+            genreStorage.refresh();
+        }
+        return Arrays.copyOf(readIds("genres"), count);
+    }
+
+    /**
+     * Для каждого из owners выбирает perOwner разных значений из источника next, при excludeSelf
+     * пропуская номер самого владельца. Результат - плоский массив, значения владельца i лежат
+     * с позиции i * perOwner.
+     */
+    private static int[] pickDistinct(int owners, int perOwner, boolean excludeSelf, IntSupplier next) {
+        int[] picked = new int[owners * perOwner];
+
+        for (int owner = 0; owner < owners; owner++) {
+            int from = owner * perOwner;
+            for (int k = 0; k < perOwner; k++) {
+                int value;
+                do {
+                    value = next.getAsInt();
+                } while ((excludeSelf && value == owner) || contains(picked, from, from + k, value));
+                picked[from + k] = value;
+            }
+        }
+
+        return picked;
+    }
+
+    private static boolean contains(int[] values, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void batchInsert(String table, String sql, int rows, RowWriter writer) {
+        long started = System.nanoTime();
+
+        for (int offset = 0; offset < rows; offset += BATCH_SIZE) {
+            int from = offset;
+            int size = Math.min(BATCH_SIZE, rows - offset);
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                    writer.write(stmt, from + i);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        log.info("Таблица {}: записано {} строк, {} строк/с", table, rows, rows * 1000L / millis);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(PreparedStatement stmt, int row) throws SQLException;
+    }
+
+    /**
+     * Распределение Ципфа на [0, size): значение k выпадает с вероятностью, пропорциональной
+     * 1 / (k + 1)^exponent. Выборка - бинарный поиск по накопленным вероятностям.
+     */
+    private static final class Zipf {
+
+        private final double[] cumulative;
+
+        Zipf(int size, double exponent) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int k = 0; k < size; k++) {
+                sum += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < size; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
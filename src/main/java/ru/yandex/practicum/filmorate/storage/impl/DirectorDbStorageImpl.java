@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
@@ -12,11 +13,16 @@ import ru.yandex.practicum.filmorate.mappers.DirectorRowMappers;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @Slf4j
@@ -26,6 +32,7 @@ public class DirectorDbStorageImpl implements DirectorStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final DirectorRowMappers directorRowMappers;
+    private final FilmSearchIndex searchIndex;
 
     @Override
     public List<Director> findAll() {
@@ -61,7 +68,9 @@ public class DirectorDbStorageImpl implements DirectorStorage {
         }, keyHolder);
 
 
-        return getById(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        Director created = getById(Objects.requireNonNull(keyHolder.getKey()).longValue());
+        searchIndex.onDirectorSaved(created.getId(), created.getName());
+        return created;
     }
 
     @Override
@@ -75,6 +84,8 @@ public class DirectorDbStorageImpl implements DirectorStorage {
             throw new NotFoundException("Ошибка обновления режиссера id = " + director.getId());
         }
 
+        searchIndex.onDirectorSaved(director.getId(), director.getName());
+
         return getById(director.getId());
     }
 
@@ -83,6 +94,7 @@ public class DirectorDbStorageImpl implements DirectorStorage {
         String sqlQuery = "DELETE FROM directors " +
                 "WHERE id = ?";
         jdbcTemplate.update(sqlQuery, id);
+        searchIndex.onDirectorDeleted(id);
     }
 
     @Override
@@ -98,6 +110,29 @@ public class DirectorDbStorageImpl implements DirectorStorage {
         return jdbcTemplate.query(sqlQuery, directorRowMappers::mapRowToDirector, filmId).stream().toList();
     }
 
+    @Override
+    public Map<Long, List<Director>> getDirectorsByFilmIds(Collection<Long> filmIds) {
+        Map<Long, List<Director>> result = new HashMap<>();
+
+        if (filmIds.isEmpty()) {
+            return result;
+        }
+
+        String sqlQuery = "SELECT f_d.film_id, d.id, d.name " +
+                "FROM film_director f_d " +
+                "JOIN directors d " +
+                "    ON f_d.director_id = d.id " +
+                "WHERE f_d.film_id = ANY(?) " +
+                "ORDER BY f_d.film_id, d.id";
+
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) resultSet -> result
+                .computeIfAbsent(resultSet.getLong("film_id"), filmId -> new ArrayList<>())
+                .add(directorRowMappers.mapRowToDirector(resultSet, resultSet.getRow())),
+                (Object) filmIds.toArray(new Long[0]));
+
+        return result;
+    }
+
     @Override
     public void updateDirectorsByFilm(Film film) {
         deleteDirectorsByFilm(film);
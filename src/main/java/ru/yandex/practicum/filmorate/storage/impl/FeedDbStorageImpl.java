@@ -4,8 +4,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mappers.FeedRowMapper;
@@ -13,10 +11,10 @@ import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriter;
 
-import java.sql.PreparedStatement;
+import java.util.Collection;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 
 @Slf4j
@@ -28,6 +26,8 @@ public class FeedDbStorageImpl implements FeedStorage {
 
     private final FeedRowMapper feedRowMapper;
 
+    private final FeedWriter feedWriter;
+
     @Override
     public List<Feed> findAll() {
         log.info("Выгрузка всех событий");
@@ -60,59 +60,54 @@ public class FeedDbStorageImpl implements FeedStorage {
     }
 
     @Override
-    public Feed create(Long userId, EventType event, Operation operation, Long entityId) {
+    public void create(Long userId, EventType event, Operation operation, Long entityId) {
         log.info("Создание события. Пользователь user_id = {} выполнил действие {} {} сущности entity_id = {}",
                 userId, event, operation, entityId);
-        final long feedId;
-        KeyHolder keyHolder = new GeneratedKeyHolder();
 
-        Feed feed = Feed
+        feedWriter.write(Feed
                 .builder()
                 .timestamp(System.currentTimeMillis())
                 .userId(userId)
                 .eventType(event)
                 .operation(operation)
                 .entityId(entityId)
-                .build();
-
-        String sqlQuery = "INSERT INTO feed(entity_id, user_id, time_stamp, event_type, operation) " +
-                "values (?, ?, ?, ?, ?)";
-
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"id"});
-            stmt.setLong(1, feed.getEntityId());
-            stmt.setLong(2, feed.getUserId());
-            stmt.setLong(3, feed.getTimestamp());
-            stmt.setString(4, feed.getEventType().toString());
-            stmt.setString(5, feed.getOperation().toString());
-            return stmt;
-        }, keyHolder);
-
-        if (Objects.nonNull(keyHolder.getKey())) {
-            feedId = keyHolder.getKey().longValue();
-        } else {
-            log.error("Ошибка добавления пользователя {} в таблицу", userId);
-            throw new NotFoundException("Ошибка добавления пользователя в таблицу");
-        }
+                .build());
+    }
 
-        log.info("Создано новое событие с id {}", feedId);
-        return findById(feedId);
+    @Override
+    public void flush(Collection<Long> userIds) {
+        feedWriter.flush(userIds);
     }
 
     @Override
     public List<Feed> getUserFeed(Long id) {
         log.info("Получаем события для пользователя с id {}", id);
+        feedWriter.flush(List.of(id));
 
-        // запрос на события друзей
-        String sqlQueryFriends = "SELECT Distinct fe.id, fe.entity_id, fe.user_id, fe.time_stamp, " +
-                "fe.event_type, fe.operation " +
-                "FROM feed fe " +
-                "WHERE fe.user_id = ? " +
-                "ORDER BY fe.time_stamp";
+        String sqlQuery = "SELECT id, entity_id, user_id, time_stamp, event_type, operation " +
+                "FROM feed " +
+                "WHERE user_id = ? " +
+                "ORDER BY time_stamp, id";
 
-        List<Feed> result = jdbcTemplate.query(sqlQueryFriends, feedRowMapper::mapRowToFeed, id).stream().toList();
+        List<Feed> result = jdbcTemplate.query(sqlQuery, feedRowMapper::mapRowToFeed, id);
 
-        log.info("Возвращение списка Feed в методе getUserFeed {}", result);
+        log.info("Для пользователя с id {} найдено событий: {}", id, result.size());
         return result;
     }
+
+    @Override
+    public List<Feed> getUserFeedPage(Long id, long since, long sinceId, long until, int limit) {
+        log.info("Получаем до {} событий пользователя с id {} после ({}, {})", limit, id, since, sinceId);
+        feedWriter.flush(List.of(id));
+
+        // курсор - пара (time_stamp, id) последнего полученного события; запрос идёт по индексу
+        // feed(user_id, time_stamp, id) и читает не больше limit строк, сколько бы событий ни было раньше
+        String sqlQuery = "SELECT id, entity_id, user_id, time_stamp, event_type, operation " +
+                "FROM feed " +
+                "WHERE user_id = ? AND time_stamp >= ? AND (time_stamp > ? OR id > ?) AND time_stamp < ? " +
+                "ORDER BY time_stamp, id " +
+                "LIMIT ?";
+
+        return jdbcTemplate.query(sqlQuery, feedRowMapper::mapRowToFeed, id, since, since, sinceId, until, limit);
+    }
 }
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -11,36 +13,114 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mappers.FilmRowMappers;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.FilmGenreStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.cache.PopularFilmsLeaderboard;
 
 import java.sql.PreparedStatement;
-import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component("filmDbStorage")
-@RequiredArgsConstructor
 public class FilmDbStorageImpl implements FilmStorage {
 
+    // сколько фильмов дополняется связанными данными за один раз при потоковой выгрузке
+    private static final int STREAM_CHUNK_SIZE = 500;
+
+    private static final String DIRECTOR_CONDITION = "EXISTS (SELECT 1 FROM film_director f_d " +
+            "JOIN directors d ON d.id = f_d.director_id " +
+            "WHERE f_d.film_id = f.id AND d.name ILIKE ?)";
+
     private final JdbcTemplate jdbcTemplate;
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
     private final FilmRowMappers filmRowMappers;
     private final FilmGenreStorage filmGenreStorage;
     private final DirectorStorage directorStorage;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final FilmSearchIndex searchIndex;
+    private final LikeMatrix likeMatrix;
+    private final boolean searchIndexEnabled;
+    private final Map<SearchShape, Map<String, Timer>> searchTimers = new EnumMap<>(SearchShape.class);
+
+    public FilmDbStorageImpl(JdbcTemplate jdbcTemplate, MpaStorage mpaStorage, GenreStorage genreStorage,
+                             FilmRowMappers filmRowMappers, FilmGenreStorage filmGenreStorage,
+                             DirectorStorage directorStorage, PopularFilmsLeaderboard leaderboard,
+                             FilmSearchIndex searchIndex, LikeMatrix likeMatrix, MeterRegistry meterRegistry,
+                             @Value("${filmorate.search.index-enabled:true}") boolean searchIndexEnabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mpaStorage = mpaStorage;
+        this.genreStorage = genreStorage;
+        this.filmRowMappers = filmRowMappers;
+        this.filmGenreStorage = filmGenreStorage;
+        this.directorStorage = directorStorage;
+        this.leaderboard = leaderboard;
+        this.searchIndex = searchIndex;
+        this.likeMatrix = likeMatrix;
+        this.searchIndexEnabled = searchIndexEnabled;
+
+        for (SearchShape shape : SearchShape.values()) {
+            Map<String, Timer> timers = new HashMap<>();
+            for (String source : List.of("index", "db")) {
+                timers.put(source, Timer.builder("filmorate.search.duration")
+                        .description("Время поиска фильмов по форме запроса")
+                        .tag("shape", shape.tag())
+                        .tag("source", source)
+                        .register(meterRegistry));
+            }
+            searchTimers.put(shape, timers);
+        }
+    }
 
     @Override
     public List<Film> findAll() {
         log.info("Выгрузка всех фильмов");
-        final String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id FROM films";
-        return jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm);
+        final String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count FROM films";
+        return filmRowMappers.hydrate(jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm));
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        log.info("Выгрузка {} фильмов после id = {}", limit, afterId);
+        final String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count " +
+                "FROM films WHERE id > ? ORDER BY id LIMIT ?";
+        return filmRowMappers.hydrate(jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm, afterId, limit));
+    }
+
+    /**
+     * Фильмам нужны жанры и режиссёры, которые подгружаются пачками, поэтому таблица читается
+     * короткими запросами по ключу, а не одним открытым ResultSet. В памяти одновременно не больше
+     * {@link #STREAM_CHUNK_SIZE} фильмов, а соединение с базой не удерживается, пока клиент читает ответ.
+     */
+    @Override
+    public void streamAll(long afterId, Consumer<Film> action) {
+        log.info("Потоковая выгрузка фильмов после id = {}", afterId);
+        long lastId = afterId;
+        List<Film> chunk;
+
+        do {
+            chunk = findPage(lastId, STREAM_CHUNK_SIZE);
+            chunk.forEach(action);
+
+            if (!chunk.isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == STREAM_CHUNK_SIZE);
     }
 
     @Override
@@ -49,7 +129,7 @@ public class FilmDbStorageImpl implements FilmStorage {
 
         Optional<Film> resultFilm;
 
-        final String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id " +
+        final String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count " +
                 "FROM films WHERE id = ?";
 
         try {
@@ -60,7 +140,7 @@ public class FilmDbStorageImpl implements FilmStorage {
         }
 
         if (resultFilm.isPresent()) {
-            return resultFilm.get();
+            return filmRowMappers.hydrate(resultFilm.get());
 
         } else {
             throw new NotFoundException("Фильм с id = " + id + " не найден");
@@ -105,6 +185,8 @@ public class FilmDbStorageImpl implements FilmStorage {
         filmGenreStorage.addGenresInFilmGenres(film, filmId);
 
         directorStorage.addDirectorsByFilm(film, filmId);
+        leaderboard.onFilmSaved(filmId, film.getReleaseDate(), getGenreIds(film));
+        searchIndex.onFilmSaved(filmId, film.getName(), getDirectorIds(film));
 
         log.info("Фильм c id = {} успешно добавлен", filmId);
         return findById(filmId);
@@ -146,6 +228,8 @@ public class FilmDbStorageImpl implements FilmStorage {
         if (rows > 0) {
             filmGenreStorage.addGenresInFilmGenres(newFilm, filmId);
             directorStorage.updateDirectorsByFilm(newFilm);
+            leaderboard.onFilmSaved(filmId, newFilm.getReleaseDate(), getGenreIds(newFilm));
+            searchIndex.onFilmSaved(filmId, newFilm.getName(), getDirectorIds(newFilm));
             log.info("Фильм с id = {} успешно обновлён", filmId);
             return findById(filmId);
 
@@ -161,6 +245,9 @@ public class FilmDbStorageImpl implements FilmStorage {
         try {
             String sql = "DELETE FROM films WHERE id = ?";
             jdbcTemplate.update(sql, id);
+            leaderboard.onFilmDeleted(id);
+            searchIndex.onFilmDeleted(id);
+            likeMatrix.onFilmDeleted(id);
             log.info("Фильм с id {} был успешно удален", id);
         } catch (Exception e) {
             log.error("Ошибка при удалении фильма с id {}: {}", id, e.getMessage());
@@ -170,7 +257,7 @@ public class FilmDbStorageImpl implements FilmStorage {
 
     @Override
     public List<Film> getFilmsByDirector(Long directorId, String sortBy) {
-        String sqlQuery = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
+        String sqlQuery = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, f.likes_count " +
                 "FROM film_director f_d " +
                 "LEFT JOIN films f " +
                 " ON f_d.film_id = f.id ";
@@ -179,45 +266,111 @@ public class FilmDbStorageImpl implements FilmStorage {
             sqlQuery += "WHERE director_id = ? " +
                     "ORDER BY f.releaseDate";
         } else if (sortBy.equals("likes")) {
-            sqlQuery += " LEFT JOIN (SELECT film_id, COUNT(*) AS likes FROM film_like GROUP BY film_id) f_l " +
-                    " ON f_l.film_id = f.id " +
-                    " WHERE director_id = ? " +
-                    " ORDER BY f_l.likes DESC";
+            sqlQuery += "WHERE director_id = ? " +
+                    "ORDER BY f.likes_count DESC";
         } else {
             throw new ValidationException("Неизвестная сортировка");
         }
 
-        return jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm, directorId).stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm, directorId));
     }
 
     @Override
     public List<Film> getFilmsByDirectorAndOrByTitle(String query, String by) {
-        String sqlQuery = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id FROM films f";
-
-        List<String> whereQuery = new ArrayList<>();
-        if (by.contains("director")) {
-            sqlQuery += " LEFT JOIN film_director f_d " +
-                    " ON f_d.film_id = f.id " +
-                    " LEFT JOIN directors d " +
-                    " ON f_d.director_id = d.id ";
-            whereQuery.add(" d.name ilike '%" + query + "%' ");
+        SearchShape shape = SearchShape.of(by);
+
+        if (!searchIndexEnabled) {
+            return searchTimers.get(shape).get("db").record(() -> searchInDb(query, shape));
         }
 
-        if (by.contains("title")) {
-            whereQuery.add(" f.name ilike '%" + query + "%' ");
+        return searchTimers.get(shape).get("index").record(() ->
+                getFilmsByIdsOrderByLikes(searchIndex.search(query, shape.byTitle, shape.byDirector)));
+    }
+
+    private List<Film> getFilmsByIdsOrderByLikes(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return List.of();
         }
 
-        if (whereQuery.isEmpty()) {
-            throw new NotFoundException("Неизвестное значение переменной by = " + by);
+        String sqlQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count " +
+                "FROM films WHERE id = ANY(?) " +
+                "ORDER BY likes_count DESC, id";
+
+        return filmRowMappers.hydrate(jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm,
+                (Object) filmIds.toArray(new Long[0])));
+    }
+
+    /**
+     * Запрос к базе для каждого сочетания by имеет постоянный текст, а строка поиска передаётся
+     * параметром. Так H2 разбирает и планирует каждую форму запроса один раз и берёт план из кэша.
+     */
+    private List<Film> searchInDb(String query, SearchShape shape) {
+        String pattern = "%" + escapeLike(query) + "%";
+        Object[] params = shape.byTitle && shape.byDirector
+                ? new Object[]{pattern, pattern}
+                : new Object[]{pattern};
+
+        return filmRowMappers.hydrate(jdbcTemplate.query(shape.sql, filmRowMappers::mapRowToFilm, params));
+    }
+
+    // спецсимволы LIKE в строке пользователя ищутся как обычные символы
+    private static String escapeLike(String query) {
+        return query.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    private List<Long> getGenreIds(Film film) {
+        if (Objects.isNull(film.getGenres())) {
+            return List.of();
+        }
+
+        return film.getGenres().stream().map(Genre::getId).toList();
+    }
+
+    private List<Long> getDirectorIds(Film film) {
+        if (Objects.isNull(film.getDirectors())) {
+            return List.of();
         }
 
-        sqlQuery += " LEFT JOIN ( " +
-                "SELECT film_id, COUNT(user_id) AS likes FROM film_like " +
-                "GROUP BY film_id ) l " +
-                "ON l.film_id = f.id " +
-                "WHERE" + String.join(" or ", whereQuery) +
-                "ORDER BY l.likes DESC ";
+        return film.getDirectors().stream().map(Director::getId).toList();
+    }
+
+    private enum SearchShape {
+        TITLE(true, false, "f.name ILIKE ?"),
+        DIRECTOR(false, true, DIRECTOR_CONDITION),
+        TITLE_AND_DIRECTOR(true, true, "f.name ILIKE ? OR " + DIRECTOR_CONDITION);
+
+        private final boolean byTitle;
+        private final boolean byDirector;
+        private final String sql;
+
+        SearchShape(boolean byTitle, boolean byDirector, String condition) {
+            this.byTitle = byTitle;
+            this.byDirector = byDirector;
+            this.sql = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, f.likes_count " +
+                    "FROM films f " +
+                    "WHERE " + condition + " " +
+                    "ORDER BY f.likes_count DESC, f.id";
+        }
+
+        static SearchShape of(String by) {
+            boolean byDirector = by.contains("director");
+            boolean byTitle = by.contains("title");
+
+            if (byTitle && byDirector) {
+                return TITLE_AND_DIRECTOR;
+            } else if (byTitle) {
+                return TITLE;
+            } else if (byDirector) {
+                return DIRECTOR;
+            }
 
-        return jdbcTemplate.query(sqlQuery, filmRowMappers::mapRowToFilm);
+            throw new NotFoundException("Неизвестное значение переменной by = " + by);
+        }
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
     }
 }
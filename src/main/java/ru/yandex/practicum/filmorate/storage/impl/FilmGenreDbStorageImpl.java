@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.mappers.GenreRowMappers;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -13,8 +14,11 @@ import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Component("filmGenreDbStorage")
@@ -39,7 +43,11 @@ public class FilmGenreDbStorageImpl implements FilmGenreStorage {
 
     @Override
     public void addGenresInFilmGenres(Film film, Long newId) {
-        List<Genre> resultGenres = genreStorage.getExistGenres(film).stream().toList();
+        // повторы жанров в запросе не сохраняем, порядок первого упоминания остаётся
+        List<Long> resultGenres = genreStorage.getExistGenres(film).stream()
+                .map(Genre::getId)
+                .distinct()
+                .toList();
 
         String sqlQueryDelete = "DELETE FROM film_genre WHERE film_id = ?";
 
@@ -52,7 +60,7 @@ public class FilmGenreDbStorageImpl implements FilmGenreStorage {
             @Override
             public void setValues(PreparedStatement preparedStatement, int i) throws SQLException {
                 preparedStatement.setLong(1, newId);
-                preparedStatement.setLong(2, resultGenres.get(i).getId());
+                preparedStatement.setLong(2, resultGenres.get(i));
             }
 
             @Override
@@ -62,22 +70,37 @@ public class FilmGenreDbStorageImpl implements FilmGenreStorage {
         });
     }
 
+    @Override
     public List<Genre> getListGenreFromDbGenres(Long filmId) {
-        List<Genre> result = new ArrayList<>();
+        return getGenresByFilmIds(List.of(filmId)).getOrDefault(filmId, List.of());
+    }
+
+    @Override
+    public Map<Long, List<Genre>> getGenresByFilmIds(Collection<Long> filmIds) {
+        Map<Long, List<Genre>> result = new HashMap<>();
 
-        String filmGenresQuery = "SELECT genre_id, " +
+        if (filmIds.isEmpty()) {
+            return result;
+        }
+
+        // названия жанров берём из кэша справочника, поэтому таблица genres в запросе не нужна.
+        // Жанры фильма идут в порядке добавления в film_genre, повторы отбрасываются по ключу
+        String sqlQuery = "SELECT film_id, genre_id " +
                 "FROM film_genre " +
-                "WHERE film_id = ? ";
+                "WHERE film_id = ANY(?) " +
+                "ORDER BY film_id, id";
 
-        List<Long> genreIds = jdbcTemplate.queryForList(filmGenresQuery, Long.class, filmId);
-        List<Genre> genres = genreStorage.findAll().stream().toList();
+        Map<Long, Map<Long, Genre>> genresByFilm = new HashMap<>();
 
-        for (Genre genre : genres) {
-            if (genreIds.contains(genre.getId())) {
-                result.add(genre);
-            }
-        }
+        jdbcTemplate.query(sqlQuery, (RowCallbackHandler) resultSet -> {
+            long filmId = resultSet.getLong("film_id");
+            long genreId = resultSet.getLong("genre_id");
+            genreStorage.findById(genreId).ifPresent(genre -> genresByFilm
+                    .computeIfAbsent(filmId, id -> new LinkedHashMap<>())
+                    .putIfAbsent(genreId, genre));
+        }, (Object) filmIds.toArray(new Long[0]));
 
+        genresByFilm.forEach((filmId, genres) -> result.put(filmId, List.copyOf(genres.values())));
         return result;
     }
 }
@@ -1,20 +1,28 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
+import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.mappers.FilmRowMappers;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.cache.PopularFilmsLeaderboard;
 
-import java.sql.PreparedStatement;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 @Slf4j
@@ -27,71 +35,154 @@ public class FilmLikeDbStorageImpl implements FilmLikeStorage {
 
     private final FilmRowMappers filmRowMappers;
 
+    private final PopularFilmsLeaderboard leaderboard;
+
+    private final boolean leaderboardEnabled;
+
+    private final boolean verifyLeaderboard;
+
+    private final LikeMatrix likeMatrix;
+
+    private final boolean likeMatrixEnabled;
+
+    private final int recommendationNeighbours;
+
+    private final boolean recommendationParityCheck;
+
     public FilmLikeDbStorageImpl(JdbcTemplate jdbcTemplate, @Lazy FilmRowMappers filmRowMappers,
-                                 @Lazy FeedStorage feedStorage) {
+                                 @Lazy FeedStorage feedStorage, PopularFilmsLeaderboard leaderboard,
+                                 @Value("${filmorate.popular.leaderboard-enabled:true}") boolean leaderboardEnabled,
+                                 @Value("${filmorate.popular.leaderboard-verify:false}") boolean verifyLeaderboard,
+                                 LikeMatrix likeMatrix,
+                                 @Value("${filmorate.recommendations.matrix-enabled:true}") boolean likeMatrixEnabled,
+                                 @Value("${filmorate.recommendations.neighbours:1}") int recommendationNeighbours,
+                                 @Value("${filmorate.recommendations.parity-check:false}")
+                                 boolean recommendationParityCheck) {
         this.jdbcTemplate = jdbcTemplate;
         this.filmRowMappers = filmRowMappers;
         this.feedStorage = feedStorage;
+        this.leaderboard = leaderboard;
+        this.leaderboardEnabled = leaderboardEnabled;
+        this.verifyLeaderboard = verifyLeaderboard;
+        this.likeMatrix = likeMatrix;
+        this.likeMatrixEnabled = likeMatrixEnabled;
+        this.recommendationNeighbours = recommendationNeighbours;
+        this.recommendationParityCheck = recommendationParityCheck;
     }
 
     @Override
     public Long getLikesById(Long id) {
-        String filmLikesQuery = "SELECT COUNT(*) FROM film_like WHERE film_id = ?";
+        String filmLikesQuery = "SELECT likes_count FROM films WHERE id = ?";
         return jdbcTemplate.queryForObject(filmLikesQuery, Long.class, id);
     }
 
     @Override
+    @Transactional
     public void addLike(long filmId, long userId) {
         log.info("Попытка пользователя {} добавить лайк фильму {}", userId, filmId);
 
-        String filmQuery = "SELECT COUNT(*) FROM film_like WHERE user_id = ? and film_id = ?";
-        Long filmCount = jdbcTemplate.queryForObject(filmQuery, Long.class, userId, filmId);
-
-        if (filmCount == null || filmCount == 0) {
-
-             String filmLikeQuery = "INSERT INTO film_like(user_id, film_id) values (?, ?)";
-
-             int rows = jdbcTemplate.update(connection -> {
-                 PreparedStatement stmt = connection.prepareStatement(filmLikeQuery);
-                 stmt.setLong(1, userId);
-                 stmt.setLong(2, filmId);
-                 return stmt;
-             });
-
-             if (rows > 0) {
-                 log.info("Пользователь с id = {} поставил лайк фильму с id = {}", userId, filmId);
-             } else {
-                 log.error("Ошибка при попытке поставить лайк фильму с id = {}", filmId);
-                 throw new ValidationException("Ошибка при попытке поставить лайк фильму с id = " + filmId);
-             }
+        // повторный лайк отсекает первичный ключ film_like, отдельная проверка не нужна
+        String filmLikeQuery = "INSERT INTO film_like(user_id, film_id) values (?, ?)";
+
+        try {
+            jdbcTemplate.update(filmLikeQuery, userId, filmId);
+            changeLikesCount(filmId, 1);
+            leaderboard.onLikesChanged(filmId);
+            likeMatrix.onLikeAdded(userId, filmId);
+            log.info("Пользователь с id = {} поставил лайк фильму с id = {}", userId, filmId);
+        } catch (DuplicateKeyException e) {
+            log.info("Пользователь с id = {} уже поставил лайк фильму с id = {}", userId, filmId);
         }
 
         feedStorage.create(userId, EventType.LIKE, Operation.ADD, filmId);
     }
 
     @Override
+    @Transactional
     public void removeLike(long filmId, long userId) {
         log.info("Пользователь с id = {} пытается удалить свой лайк фильму с id = {}", userId, filmId);
 
-        String filmLikeQuery = "SELECT user_id FROM film_like WHERE film_id = ?";
-        List<Long> userIds = jdbcTemplate.queryForList(filmLikeQuery, Long.class, filmId);
+        String filmLikeRemoveQuery = "DELETE FROM film_like WHERE user_id = ? AND film_id = ?";
+        int rows = jdbcTemplate.update(filmLikeRemoveQuery, userId, filmId);
 
-        if (userIds.contains(userId)) {
-            String filmLikeRemoveQuery = "DELETE FROM film_like WHERE user_id = ? AND film_id = ?";
-            int rows = jdbcTemplate.update(filmLikeRemoveQuery, userId, filmId);
+        if (rows > 0) {
+            changeLikesCount(filmId, -1);
+            leaderboard.onLikesChanged(filmId);
+            likeMatrix.onLikeRemoved(userId, filmId);
+            feedStorage.create(userId, EventType.LIKE, Operation.REMOVE, filmId);
+            log.info("Пользователь с id = {} удалил свой лайк фильму с id = {}", userId, filmId);
+        }
+    }
 
-            if (rows > 0) {
-                feedStorage.create(userId, EventType.LIKE, Operation.REMOVE, filmId);
-                log.info("Пользователь с id = {} удалил свой лайк фильму с id = {}", userId, filmId);
-            } else {
-                log.error("Ошибка во время удаления лайка фильму {}", filmId);
-                throw new ValidationException("Ошибка во время удаления лайка фильму " + filmId);
-            }
+    @Override
+    public int reconcileLikesCount() {
+        String reconcileQuery = "UPDATE films f " +
+                "SET likes_count = (SELECT COUNT(*) FROM film_like fl WHERE fl.film_id = f.id) " +
+                "WHERE likes_count <> (SELECT COUNT(*) FROM film_like fl WHERE fl.film_id = f.id)";
+
+        int rows = jdbcTemplate.update(reconcileQuery);
+
+        if (rows > 0) {
+            log.warn("Счётчик лайков расходился с таблицей film_like у {} фильмов, значения исправлены", rows);
         }
+
+        // заодно перечитываем рейтинг, чтобы расхождения в памяти тоже не накапливались
+        leaderboard.invalidate();
+
+        return rows;
+    }
+
+    private void changeLikesCount(long filmId, int delta) {
+        String likesCountQuery = "UPDATE films SET likes_count = likes_count + ? WHERE id = ?";
+        jdbcTemplate.update(likesCountQuery, delta, filmId);
     }
 
     @Override
     public List<Film> getPopularFilms(Long count, Long genreId, Long year) {
+        if (!leaderboardEnabled) {
+            return getPopularFilmsFromDb(count, genreId, year);
+        }
+
+        Optional<List<Long>> topIds = leaderboard.getTop(count, genreId, year);
+
+        if (topIds.isEmpty()) {
+            return getPopularFilmsFromDb(count, genreId, year);
+        }
+
+        log.info("Получение популярных фильмов в количестве {} из рейтинга в памяти", count);
+        List<Film> films = getFilmsByIds(topIds.get());
+
+        if (verifyLeaderboard) {
+            List<Long> dbIds = getPopularFilmsFromDb(count, genreId, year).stream().map(Film::getId).toList();
+            if (!dbIds.equals(topIds.get())) {
+                log.warn("Рейтинг в памяти расходится с базой для жанра {} и года {}: {} вместо {}",
+                        genreId, year, topIds.get(), dbIds);
+            }
+        }
+
+        return films;
+    }
+
+    private List<Film> getFilmsByIds(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+
+        String filmsQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count " +
+                "FROM films WHERE id = ANY(?)";
+
+        Map<Long, Film> films = jdbcTemplate.query(filmsQuery, filmRowMappers::mapRowToFilm,
+                        (Object) filmIds.toArray(new Long[0])).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+
+        // сохраняем порядок, в котором пришли id
+        return filmRowMappers.hydrate(filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .toList());
+    }
+
+    private List<Film> getPopularFilmsFromDb(Long count, Long genreId, Long year) {
 
         if (Objects.nonNull(genreId) && Objects.nonNull(year)) {
             return getPopularFilmsGenreYear(count, genreId, year);
@@ -105,89 +196,106 @@ public class FilmLikeDbStorageImpl implements FilmLikeStorage {
 
         log.info("Получение популярных фильмов в количестве {}", count);
 
-        String filmLikesQueryCount = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
+        String filmLikesQueryCount = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, " +
+                "f.likes_count " +
                 "FROM films AS f " +
-                "LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id " +
-                "GROUP BY f.id " +
-                "ORDER BY COUNT(fl.film_id) DESC " +
+                "ORDER BY f.likes_count DESC, f.id " +
                 "LIMIT ?";
 
-        return jdbcTemplate.query(filmLikesQueryCount, filmRowMappers::mapRowToFilm, count)
-                .stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(filmLikesQueryCount, filmRowMappers::mapRowToFilm, count));
     }
 
     private List<Film> getPopularFilmsGenre(Long count, Long genreId) {
         log.info("Получение популярных фильмов с фильтрацией по жанру {} в количестве {}", genreId, count);
 
-        String filmLikesQueryGenres = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
+        String filmLikesQueryGenres = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, " +
+                "f.likes_count " +
                 "FROM films AS f " +
-                "RIGHT OUTER JOIN film_like AS fl ON f.id = fl.film_id  " +
-                "RIGHT OUTER JOIN film_genre AS fg ON f.id = fg.film_id " +
-                "WHERE fg.genre_id = ? " +
-                "GROUP BY f.id " +
-                "ORDER BY COUNT(fl.film_id) DESC " +
+                "WHERE EXISTS (SELECT 1 FROM film_genre AS fg WHERE fg.film_id = f.id AND fg.genre_id = ?) " +
+                "ORDER BY f.likes_count DESC, f.id " +
                 "LIMIT ?";
 
-        return jdbcTemplate.query(filmLikesQueryGenres, filmRowMappers::mapRowToFilm,
-                    genreId, count).stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(filmLikesQueryGenres, filmRowMappers::mapRowToFilm,
+                genreId, count));
     }
 
     private List<Film> getPopularFilmsGenreYear(Long count, Long genreId, Long year) {
         log.info("Получение популярных фильмов c фильтрацией по жанру {} и году {} в количестве {}",
                 genreId, year, count);
 
-        String filmLikesQueryGenreYear = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
+        String filmLikesQueryGenreYear = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, " +
+                "f.likes_count " +
                 "FROM films AS f " +
-                "RIGHT OUTER JOIN film_like AS fl ON f.id = fl.film_id " +
-                "RIGHT OUTER JOIN film_genre AS fg ON f.id = fg.film_id " +
-                "WHERE fg.genre_id = ? AND EXTRACT(YEAR FROM f.releaseDate) = ? " +
-                "GROUP BY f.id " +
-                "ORDER BY COUNT(fl.film_id) DESC " +
+                "WHERE EXISTS (SELECT 1 FROM film_genre AS fg WHERE fg.film_id = f.id AND fg.genre_id = ?) " +
+                "AND EXTRACT(YEAR FROM f.releaseDate) = ? " +
+                "ORDER BY f.likes_count DESC, f.id " +
                 "LIMIT ?";
 
-        return jdbcTemplate.query(filmLikesQueryGenreYear, filmRowMappers::mapRowToFilm,
-                    genreId, year, count).stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(filmLikesQueryGenreYear, filmRowMappers::mapRowToFilm,
+                genreId, year, count));
     }
 
     private List<Film> getPopularFilmsYear(Long count, Long year) {
         log.info("Получение популярных фильмов с фильрацией по году {} в количестве {}", year, count);
 
-        String filmLikesQueryYear = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
+        String filmLikesQueryYear = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, " +
+                "f.likes_count " +
                 "FROM films AS f " +
-                "RIGHT OUTER JOIN film_like AS fl ON f.id = fl.film_id " +
                 "WHERE EXTRACT(YEAR FROM f.releaseDate) = ? " +
-                "GROUP BY f.id " +
-                "ORDER BY COUNT(fl.film_id) DESC " +
+                "ORDER BY f.likes_count DESC, f.id " +
                 "LIMIT ?";
 
-        return jdbcTemplate.query(filmLikesQueryYear, filmRowMappers::mapRowToFilm,
-                year, count).stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(filmLikesQueryYear, filmRowMappers::mapRowToFilm,
+                year, count));
     }
 
     @Override
     public List<Film> getCommonFilms(Long userId, Long friendId) {
         log.info("Получение списка общих фильмов, лайкнутых пользователями с ID {} и {}", userId, friendId);
 
-        String filmCommonLikes = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id " +
-                "FROM films f " +
-                "INNER JOIN (SELECT user1.film_id " +
-                "    FROM (SELECT film_id FROM film_like WHERE user_id = ?) user1 " +
-                "        INNER JOIN (SELECT film_id FROM film_like WHERE user_id = ?) user2 " +
-                "        on user1.film_id = user2.film_id) l " +
-                "ON l.film_id = f.id " +
-                "LEFT JOIN (SELECT film_id, COUNT(user_id) AS count_like FROM film_like GROUP BY film_id) likes " +
-                "ON f.id = likes.film_id " +
-                "ORDER BY count_like DESC";
-
-        return jdbcTemplate.query(filmCommonLikes, filmRowMappers::mapRowToFilm, userId,
-                friendId).stream().toList();
+        List<Long> filmIds = likeMatrix.getCommonFilms(userId, friendId);
+
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+
+        String filmsQuery = "SELECT id, name, description, releaseDate, duration, mpa_id, likes_count " +
+                "FROM films WHERE id = ANY(?) " +
+                "ORDER BY likes_count DESC, id";
+
+        return filmRowMappers.hydrate(jdbcTemplate.query(filmsQuery, filmRowMappers::mapRowToFilm,
+                (Object) filmIds.toArray(new Long[0])));
     }
 
     @Override
     public List<Film> getRecommendations(Long userId) {
         log.info("Получение рекомендации для пользователя с ID {}", userId);
 
-        String query = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id FROM films f " +
+        if (!likeMatrixEnabled) {
+            return getRecommendationsFromDb(userId);
+        }
+
+        List<Long> filmIds = likeMatrix.recommend(userId, recommendationNeighbours);
+
+        if (recommendationParityCheck) {
+            Set<Long> dbIds = getRecommendationsFromDb(userId).stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            List<Set<Long>> expected = likeMatrix.recommendationsOfMostSimilar(userId);
+
+            if (!expected.contains(dbIds)) {
+                log.warn("Рекомендации в памяти расходятся с базой для пользователя {}: {} вместо {}",
+                        userId, expected, dbIds);
+            }
+        }
+
+        return getFilmsByIds(filmIds);
+    }
+
+    // прежний SQL-запрос рекомендаций, эталон для сверки с матрицей лайков
+    List<Film> getRecommendationsFromDb(Long userId) {
+        String query = "SELECT f.id, f.name, f.description, f.releaseDate, f.duration, f.mpa_id, f.likes_count " +
+                "FROM films f " +
                 "INNER JOIN (SELECT film_id FROM film_like f_l " +
                 "INNER JOIN (SELECT user_id2.user_id from (SELECT film_id FROM film_like WHERE user_id = ?) user_id1 " +
                 "LEFT JOIN FILM_LIKE user_id2 " +
@@ -200,7 +308,8 @@ public class FilmLikeDbStorageImpl implements FilmLikeStorage {
                 "SELECT film_id FROM film_like WHERE user_id = ?) ff " +
                 "ON f.id = ff.film_id";
 
-        return jdbcTemplate.query(query, filmRowMappers::mapRowToFilm, userId, userId, userId).stream().toList();
+        return filmRowMappers.hydrate(jdbcTemplate.query(query, filmRowMappers::mapRowToFilm,
+                userId, userId, userId));
     }
 
 }
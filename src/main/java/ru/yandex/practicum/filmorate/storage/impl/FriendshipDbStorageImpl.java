@@ -5,17 +5,23 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
-import ru.yandex.practicum.filmorate.mappers.UserRowMapper;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.Operation;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
 
 import java.sql.PreparedStatement;
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -24,8 +30,9 @@ public class FriendshipDbStorageImpl implements FriendshipStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final UserStorage userStorage;
-    private final UserRowMapper userRowMapper;
     private final FeedStorage feedStorage;
+    private final FriendGraph friendGraph;
+    private final TimelineStorage timelineStorage;
 
     @Override
     public User addFriend(Long user1Id, Long user2Id) {
@@ -49,6 +56,8 @@ public class FriendshipDbStorageImpl implements FriendshipStorage {
                     stmt.setLong(2, user2Id);
                     return stmt;
                 });
+                friendGraph.onFriendAdded(user1Id, user2Id);
+                timelineStorage.onFriendAdded(user1Id, user2Id);
             }
 
             mainUser.getFriends().add(friendUser);
@@ -81,6 +90,8 @@ public class FriendshipDbStorageImpl implements FriendshipStorage {
 
             int deletedRows = jdbcTemplate.update(sqlDeleteFriend, mainUserId, friendUserId);
             log.info("Удалено {} строк", deletedRows);
+            friendGraph.onFriendRemoved(mainUserId, friendUserId);
+            timelineStorage.onFriendRemoved(mainUserId, friendUserId);
 
             feedStorage.create(mainUserId, EventType.FRIEND, Operation.REMOVE, friendUserId);
 
@@ -99,40 +110,31 @@ public class FriendshipDbStorageImpl implements FriendshipStorage {
 
     @Override
     public List<User> getCommonFriends(Long firstUserId, Long secondUserId) {
-        String sqlCommonFriends = "SELECT id, email, login, name, birthday FROM users " +
-                "JOIN friendship AS fri ON users.id = fri.user2_id " +
-                "JOIN friendship AS fri2 ON users.id = fri2.user2_id " +
-                "WHERE fri.user1_id = ? AND fri2.user1_id = ? ";
-
-        if (userStorage.findById(firstUserId) != null && userStorage.findById(secondUserId) != null) {
-
-            return jdbcTemplate.query(sqlCommonFriends, userRowMapper::mapRowToUser, firstUserId, secondUserId);
-
-        } else if (userStorage.findById(firstUserId) == null) {
-            log.error("Пользователь с id = {} не найден", firstUserId);
-            throw new NotFoundException("Пользователь с id = " + firstUserId + " не найден");
-
-        } else {
-            log.error("Пользователь с id = {} не найден", secondUserId);
-            throw new NotFoundException("Пользователь с id = " + secondUserId + " не найден");
+        List<Long> commonIds = friendGraph.getCommonFriends(firstUserId, secondUserId);
+
+        // сами пользователи загружаются тем же запросом, что и общие друзья, - для проверки существования
+        Set<Long> ids = new HashSet<>(commonIds);
+        ids.add(firstUserId);
+        ids.add(secondUserId);
+        Map<Long, User> users = userStorage.findByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        for (Long userId : List.of(firstUserId, secondUserId)) {
+            if (!users.containsKey(userId)) {
+                log.error("Пользователь с id = {} не найден", userId);
+                throw new NotFoundException("Пользователь с id = " + userId + " не найден");
+            }
         }
+
+        return commonIds.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     @Override
     public List<User> getFriends(Long userId) {
-        String sqlQueryUser2 = "SELECT user2_id " +
-                "FROM friendship WHERE user1_id = ?";
-
-        List<Long> friendsId = jdbcTemplate.queryForList(sqlQueryUser2, Long.class, userId);
-        List<User> allUsers = userStorage.findAll().stream().toList();
-        List<User> result = new ArrayList<>();
-
-        for (User user : allUsers) {
-            if (friendsId.contains(user.getId())) {
-                result.add(user);
-            }
-        }
-
-        return result;
+        // загружаются только друзья пользователя, стоимость не зависит от размера таблицы users
+        return userStorage.findByIds(friendGraph.getFriends(userId));
     }
 }
@@ -1,8 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
@@ -11,6 +10,7 @@ import ru.yandex.practicum.filmorate.mappers.GenreRowMappers;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,61 +19,56 @@ import java.util.Optional;
 
 @Slf4j
 @Component("genreDbStorage")
-@RequiredArgsConstructor
 public class GenreDbStorageImpl implements GenreStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final GenreRowMappers genreRowMappers;
+    private final ReferenceDataCache<Genre> cache;
+
+    public GenreDbStorageImpl(JdbcTemplate jdbcTemplate, GenreRowMappers genreRowMappers,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.genreRowMappers = genreRowMappers;
+        this.cache = new ReferenceDataCache<>("genres", this::loadAll, Genre::getId);
+        this.cache.bindTo(meterRegistry);
+    }
 
     @Override
     public List<Genre> findAll() {
-        String sqlQuery = "SELECT * from genres";
-        return jdbcTemplate.query(sqlQuery, genreRowMappers::mapRowToGenre);
+        return cache.getAll();
     }
 
+    @Override
     public List<Long> findIds() {
-        String sqlQuery = "SELECT id from genres";
-        return jdbcTemplate.queryForList(sqlQuery, Long.class);
+        return cache.getAll().stream().map(Genre::getId).toList();
     }
 
     @Override
     public Optional<Genre> findById(Long id) {
-        return Optional.empty();
+        return Optional.ofNullable(id == null ? null : cache.get(id));
     }
 
     @Override
     public Genre getNameById(Long id) {
         log.info("Поиск жанра по id: {}", id);
-        String sqlQuery = "SELECT * " +
-                "FROM genres where id = ?";
-
-        Optional<Genre> resultGenre;
-
-        try {
-            resultGenre = Optional.ofNullable(jdbcTemplate.queryForObject(sqlQuery,
-                    genreRowMappers::mapRowToGenre, id));
-        } catch (EmptyResultDataAccessException e) {
-            resultGenre = Optional.empty();
-        }
-
-        if (resultGenre.isPresent()) {
-            return resultGenre.get();
+        Genre genre = cache.get(id);
 
-        } else {
+        if (genre == null) {
             log.error("Жанр с id = {} не найден", id);
             throw new NotFoundException("Жанр с id = " + id + " не найден");
         }
+
+        return genre;
     }
 
     @Override
     public List<Genre> getExistGenres(Film film) {
-        List<Long> genres = findIds().stream().toList();
         List<Genre> filmGenres = film.getGenres();
         List<Genre> resultGenres = new ArrayList<>();
 
         if (Objects.nonNull(filmGenres)) {
             filmGenres.forEach(genre -> {
-                        if (genres.contains(genre.getId())) {
+                        if (genre.getId() != null && cache.contains(genre.getId())) {
                             resultGenres.add(genre);
                         } else {
                             throw new ValidationException("Указанный жанр не существует");
@@ -83,4 +78,14 @@ public class GenreDbStorageImpl implements GenreStorage {
         }
         return resultGenres;
     }
+
+    @Override
+    public void refresh() {
+        cache.refresh();
+    }
+
+    private List<Genre> loadAll() {
+        String sqlQuery = "SELECT id, name FROM genres ORDER BY id";
+        return jdbcTemplate.query(sqlQuery, genreRowMappers::mapRowToGenre);
+    }
 }
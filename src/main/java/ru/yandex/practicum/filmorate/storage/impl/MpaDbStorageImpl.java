@@ -1,8 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
@@ -11,85 +10,62 @@ import ru.yandex.practicum.filmorate.mappers.MpaRowMappers;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
 
 @Slf4j
 @Component("mpaDbStorage")
-
-@RequiredArgsConstructor
 public class MpaDbStorageImpl implements MpaStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private final MpaRowMappers mpaRowMappers;
+    private final ReferenceDataCache<Mpa> cache;
+
+    public MpaDbStorageImpl(JdbcTemplate jdbcTemplate, MpaRowMappers mpaRowMappers, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mpaRowMappers = mpaRowMappers;
+        this.cache = new ReferenceDataCache<>("mpa", this::loadAll, Mpa::getId);
+        this.cache.bindTo(meterRegistry);
+    }
 
     @Override
     public List<Mpa> findAll() {
-        String sqlQuery = "SELECT * from mpa";
-        return jdbcTemplate.query(sqlQuery, mpaRowMappers::mapRowToMpa);
+        return cache.getAll();
     }
 
     @Override
     public Mpa findById(Integer id) {
-        Optional<Mpa> resultMpa;
-        String sqlQuery = "SELECT id, name " +
-                "FROM mpa where id = ?";
-
-        try {
-            resultMpa = Optional.ofNullable(jdbcTemplate.queryForObject(sqlQuery,
-                    mpaRowMappers::mapRowToMpa, id));
-        } catch (EmptyResultDataAccessException e) {
-            resultMpa = Optional.empty();
-        }
-
-        return resultMpa.orElse(null);
+        return id == null ? null : cache.get(id);
     }
 
     @Override
     public Integer getCountById(Film film) {
         log.info("Проверка существования mpa_id в таблице mpa");
 
-        Integer count;
-        final String sqlQueryMpa = "SELECT COUNT(*) " +
-                "FROM mpa WHERE id = ?";
-
-        try {
-            count = jdbcTemplate.queryForObject(sqlQueryMpa, Integer.class, film.getMpa().getId());
-        } catch (EmptyResultDataAccessException e) {
-            throw new ValidationException("MPA id не существуют");
-        }
-
-        if (Objects.isNull(count) || count == 0) {
+        if (!cache.contains(film.getMpa().getId())) {
             throw new ValidationException("MPA id не существует");
         }
 
-        return count;
+        return 1;
     }
 
     @Override
     public Mpa getNameById(Long id) {
         log.info("Поиск MPA по id: {}", id);
-        String sqlQuery = "SELECT * " +
-                "FROM mpa where id = ?";
-
-        Optional<Mpa> resultMpa;
-
-        try {
-            resultMpa = Optional.ofNullable(jdbcTemplate.queryForObject(sqlQuery,
-                    mpaRowMappers::mapRowToMpa, id));
-        } catch (EmptyResultDataAccessException e) {
-            resultMpa = Optional.empty();
-        }
-
-        if (resultMpa.isPresent()) {
-            return resultMpa.get();
+        Mpa mpa = cache.get(id);
 
-        } else {
+        if (mpa == null) {
             log.error("Mpa с id = {} не найден", id);
             throw new NotFoundException("Mpa с id = " + id + " не найден");
         }
+
+        return mpa;
+    }
+
+    private List<Mpa> loadAll() {
+        String sqlQuery = "SELECT id, name FROM mpa ORDER BY id";
+        return jdbcTemplate.query(sqlQuery, mpaRowMappers::mapRowToMpa);
     }
 
 }
@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -18,7 +20,6 @@ import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 @Repository
@@ -92,16 +93,9 @@ public class ReviewDbStorageImpl implements ReviewStorage {
     @Override
     public Review getReviewById(Long id) {
         log.info("Начало метода getReviewById, класса ReviewDbStorageImpl");
-        final String QUERY = "SELECT r.id, r.content, r.is_positive, u.name AS user_name, f.name AS film_name, " +
-                "r.user_id, r.film_id, " +
-                "COALESCE(SUM(CASE WHEN uf.is_like IS TRUE THEN 1 ELSE 0 END), 0) AS lik, " +
-                "COALESCE(SUM(CASE WHEN uf.is_like IS FALSE THEN 1 ELSE 0 END), 0) AS dis " +
-                "FROM reviews r " +
-                "JOIN users u ON r.user_id = u.id " +
-                "JOIN films f ON r.film_id = f.id " +
-                "LEFT JOIN useful uf ON r.id = uf.review_id " +
-                "WHERE r.id = ? " +
-                "GROUP BY r.id, r.content, r.is_positive, u.name, f.name, r.user_id, r.film_id";
+        final String QUERY = "SELECT id, content, is_positive, user_id, film_id, useful " +
+                "FROM reviews " +
+                "WHERE id = ?";
 
         log.info("Метод getReviewById перед вызовом маппера");
         return jdbc.queryForObject(QUERY, reviewMapper, id);
@@ -109,69 +103,88 @@ public class ReviewDbStorageImpl implements ReviewStorage {
 
     @Override
     public List<Review> getReviewByFilm(Long id, int count) {
-
-        final String reviewByFilm = "SELECT r.id, r.content, r.is_positive, r.user_id, r.film_id, " +
-                "likes.lik, dislikes.dis " +
-                "FROM reviews r " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS lik FROM useful WHERE is_like = TRUE " +
-                "GROUP BY review_id) likes " +
-                "ON likes.review_id = r.id " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS dis FROM useful WHERE is_like = FALSE " +
-                "GROUP BY review_id) dislikes " +
-                "ON dislikes.review_id = r.id " +
-                "JOIN films f ON r.film_id = f.id " +
-                "LEFT JOIN useful uf ON r.id = uf.review_id " +
-                "WHERE r.film_id = ? " +
-                "ORDER BY (COALESCE(likes.lik, 0) - COALESCE(dislikes.dis, 0)) DESC " +
+        // идёт по индексу reviews(film_id, useful DESC, id) и читает не больше count строк
+        final String reviewByFilm = "SELECT id, content, is_positive, user_id, film_id, useful " +
+                "FROM reviews " +
+                "WHERE film_id = ? " +
+                "ORDER BY useful DESC, id " +
                 "LIMIT ?";
 
         List<Review> review = jdbc.query(reviewByFilm, reviewMapper, id, count);
-        log.info("Получены отзывы о фильме {}.", review);
+        log.info("Получено {} отзывов о фильме {}.", review.size(), id);
         return review;
     }
 
     @Override
     public List<Review> getAllReviews(int count) {
-        final String review = "SELECT r.id, r.content, r.is_positive, r.user_id, r.film_id, likes.lik, dislikes.dis " +
-                "FROM reviews r " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS lik FROM useful WHERE is_like = TRUE " +
-                "GROUP BY review_id) likes " +
-                "ON likes.review_id = r.id " +
-                "LEFT JOIN (SELECT review_id, COUNT(*) AS dis FROM useful WHERE is_like = FALSE " +
-                "GROUP BY review_id) dislikes " +
-                "ON dislikes.review_id = r.id " +
-                "ORDER BY (COALESCE(likes.lik, 0) - COALESCE(dislikes.dis, 0)) DESC " +
+        final String review = "SELECT id, content, is_positive, user_id, film_id, useful " +
+                "FROM reviews " +
+                "ORDER BY useful DESC, id " +
                 "LIMIT ?";
 
         List<Review> reviews = jdbc.query(review, reviewMapper, count);
-        log.info("Получены отзывы о фильме {}.", reviews);
+        log.info("Получено {} отзывов.", reviews.size());
         return reviews;
     }
 
     @Override
+    @Transactional
     public void likeOrDislikeToReview(Long reviewId, Long userId, boolean isLike) {
         log.info("Начало метода likeOrDislikeToReview");
 
-        String checkSql = "SELECT * FROM useful WHERE review_id = ? AND user_id = ?";
-        List<Map<String, Object>> likeDislike = jdbc.queryForList(checkSql, reviewId, userId);
+        List<Boolean> previous = mergeReaction(reviewId, userId, isLike);
+
+        // смена дизлайка на лайк сдвигает рейтинг на 2, повторная оценка - не сдвигает
+        int delta = reactionScore(isLike) - (previous.isEmpty() ? 0 : reactionScore(previous.get(0)));
+        changeUseful(reviewId, delta);
 
-        if (!likeDislike.isEmpty()) {
-            String updateSql = "UPDATE useful SET is_like = ? WHERE review_id = ? AND user_id = ?";
-            jdbc.update(updateSql, isLike, reviewId, userId);
-        } else {
-            String insertSql = "INSERT INTO useful (review_id, is_like, user_id) VALUES (?, ?, ?)";
-            jdbc.update(insertSql, reviewId, isLike, userId);
-        }
         log.info("Добавлен {} у отзыва {} или обновлен для пользователя {}.", isLike ? "лайк" : "дизлайк", reviewId, userId);
 
     }
 
     @Override
+    @Transactional
     public void deleteLikeOrDislike(Long reviewId, Long userId, boolean isLike) {
         String action = isLike ? "Лайк" : "Дислайк";
-        final String sql = "DELETE FROM useful WHERE review_id = ? AND user_id = ?";
-        jdbc.update(sql, reviewId, userId);
+
+        // удаление и чтение удалённой оценки одним запросом
+        final String sql = "SELECT is_like FROM OLD TABLE (DELETE FROM useful WHERE review_id = ? AND user_id = ?)";
+        List<Boolean> previous = jdbc.queryForList(sql, Boolean.class, reviewId, userId);
+
+        if (!previous.isEmpty()) {
+            changeUseful(reviewId, -reactionScore(previous.get(0)));
+        }
+
         log.info(action + " удален.");
     }
 
-}
\ No newline at end of file
+    /**
+     * Ставит или меняет оценку одним запросом и возвращает прежнюю оценку (пустой список, если её не было).
+     */
+    private List<Boolean> mergeReaction(Long reviewId, Long userId, boolean isLike) {
+        final String mergeSql = "SELECT is_like FROM OLD TABLE (" +
+                "MERGE INTO useful (review_id, user_id, is_like) KEY (review_id, user_id) VALUES (?, ?, ?))";
+
+        try {
+            return jdbc.queryForList(mergeSql, Boolean.class, reviewId, userId, isLike);
+        } catch (DuplicateKeyException e) {
+            // параллельный запрос успел вставить оценку первым - теперь строка есть и MERGE её обновит
+            log.debug("Повторная попытка оценки отзыва {} пользователем {}", reviewId, userId);
+            return jdbc.queryForList(mergeSql, Boolean.class, reviewId, userId, isLike);
+        }
+    }
+
+    private void changeUseful(Long reviewId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+
+        String usefulSql = "UPDATE reviews SET useful = useful + ? WHERE id = ?";
+        jdbc.update(usefulSql, delta, reviewId);
+    }
+
+    private static int reactionScore(Boolean isLike) {
+        return Boolean.TRUE.equals(isLike) ? 1 : -1;
+    }
+
+}
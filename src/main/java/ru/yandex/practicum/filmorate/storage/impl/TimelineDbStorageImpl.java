@@ -0,0 +1,242 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.mappers.FeedRowMapper;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ленты событий друзей, материализованные при записи (fan-out-on-write).
+ * Каждое событие копируется в таблицу timeline всем, кто добавил автора в друзья, поэтому
+ * чтение ленты - один проход по индексу на размер страницы. Для авторов, у которых подписчиков
+ * больше {@code fanOutLimit}, события не раскладываются, а подтягиваются из feed при чтении.
+ * <p>
+ * Подписчики берутся из таблицы friendship в момент записи, а при чтении запись ленты учитывается,
+ * только пока автор остаётся другом владельца: событие, записанное из очереди уже после удаления
+ * друга, в ленту не попадёт. Лента владельца обрезается до {@code capacity} записей в среднем раз
+ * на {@code capacity / 10} пришедших в неё записей (владелец выбирается случайно с вероятностью,
+ * пропорциональной числу новых записей), - так обрезка стоит O(1) чтений индекса на событие
+ * и не требует хранить счётчики по владельцам.
+ */
+@Slf4j
+@Component
+public class TimelineDbStorageImpl implements TimelineStorage {
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final Comparator<Feed> NEWEST_FIRST = Comparator.comparing(Feed::getTimestamp)
+            .thenComparing(Feed::getEventId)
+            .reversed();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FeedRowMapper feedRowMapper;
+    private final FriendGraph friendGraph;
+    private final int fanOutLimit;
+    private final int capacity;
+    private final int trimThreshold;
+    private final Timer fanOutTimer;
+
+    public TimelineDbStorageImpl(JdbcTemplate jdbcTemplate, FeedRowMapper feedRowMapper, FriendGraph friendGraph,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${filmorate.timeline.fan-out-limit:1000}") int fanOutLimit,
+                                 @Value("${filmorate.timeline.capacity:1000}") int capacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.feedRowMapper = feedRowMapper;
+        this.friendGraph = friendGraph;
+        this.fanOutLimit = fanOutLimit;
+        this.capacity = capacity;
+        this.trimThreshold = Math.max(1, capacity / 10);
+        this.fanOutTimer = Timer.builder("filmorate.timeline.fanout")
+                .description("Время раскладки пачки событий по лентам")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void fanOut(List<Feed> events) {
+        fanOutTimer.record(() -> {
+            List<Object[]> rows = new ArrayList<>();
+            Map<Long, Integer> inserts = new HashMap<>();
+
+            for (Feed event : events) {
+                if (friendGraph.getFollowerCount(event.getUserId()) > fanOutLimit) {
+                    continue;
+                }
+
+                rows.add(new Object[]{event.getEventId(), event.getUserId(), event.getTimestamp(), event.getUserId()});
+                friendGraph.getFollowers(event.getUserId()).forEach(owner -> inserts.merge(owner, 1, Integer::sum));
+            }
+
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            // дружба проверяется по таблице: событие из очереди не уйдёт тому, кто уже удалил автора из друзей
+            String sqlQuery = "MERGE INTO timeline(owner_id, feed_id, author_id, time_stamp) " +
+                    "KEY (owner_id, time_stamp, feed_id) " +
+                    "SELECT fr.user1_id, ?, ?, ? FROM friendship fr WHERE fr.user2_id = ?";
+            jdbcTemplate.batchUpdate(sqlQuery, rows);
+
+            trim(ownersToTrim(inserts));
+        });
+    }
+
+    @Override
+    public void onFriendAdded(Long userId, Long friendId) {
+        if (friendGraph.getFollowerCount(friendId) > fanOutLimit) {
+            return;
+        }
+
+        // переносим в ленту последние события нового друга, дальше они будут приходить при записи
+        String sqlQuery = "MERGE INTO timeline(owner_id, feed_id, author_id, time_stamp) " +
+                "KEY (owner_id, time_stamp, feed_id) " +
+                "SELECT ?, id, user_id, time_stamp FROM feed WHERE user_id = ? " +
+                "ORDER BY time_stamp DESC, id DESC LIMIT ?";
+        jdbcTemplate.update(sqlQuery, userId, friendId, capacity);
+        trim(List.of(userId));
+    }
+
+    @Override
+    public void onFriendRemoved(Long userId, Long friendId) {
+        String sqlQuery = "DELETE FROM timeline WHERE owner_id = ? AND author_id = ?";
+        jdbcTemplate.update(sqlQuery, userId, friendId);
+    }
+
+    @Override
+    public List<Long> getAuthors(Long userId) {
+        return friendGraph.getFriends(userId);
+    }
+
+    @Override
+    public List<Feed> getTimeline(Long userId, long before, long beforeId, int limit) {
+        log.info("Получаем ленту друзей пользователя с id {} до ({}, {})", userId, before, beforeId);
+
+        String timelineQuery = "SELECT fe.id, fe.entity_id, fe.user_id, fe.time_stamp, fe.event_type, fe.operation " +
+                "FROM timeline t " +
+                "JOIN friendship fr ON fr.user1_id = t.owner_id AND fr.user2_id = t.author_id " +
+                "JOIN feed fe ON fe.id = t.feed_id " +
+                "WHERE t.owner_id = ? AND t.time_stamp <= ? AND (t.time_stamp < ? OR t.feed_id < ?) " +
+                "ORDER BY t.time_stamp DESC, t.feed_id DESC " +
+                "LIMIT ?";
+        List<Feed> events = jdbcTemplate.query(timelineQuery, feedRowMapper::mapRowToFeed,
+                userId, before, before, beforeId, limit);
+
+        List<Long> celebrities = friendGraph.getFriends(userId).stream()
+                .filter(friendId -> friendGraph.getFollowerCount(friendId) > fanOutLimit)
+                .toList();
+
+        if (celebrities.isEmpty()) {
+            return events;
+        }
+
+        // события популярных друзей не раскладывались при записи - дочитываем их из feed и сливаем
+        String celebritiesQuery = "SELECT id, entity_id, user_id, time_stamp, event_type, operation " +
+                "FROM feed " +
+                "WHERE user_id = ANY(?) AND time_stamp <= ? AND (time_stamp < ? OR id < ?) " +
+                "ORDER BY time_stamp DESC, id DESC " +
+                "LIMIT ?";
+        List<Feed> pulled = jdbcTemplate.query(celebritiesQuery, feedRowMapper::mapRowToFeed,
+                celebrities.toArray(new Long[0]), before, before, beforeId, limit);
+
+        // событие могло попасть и в ленту, если автор стал популярным уже после раскладки
+        Map<Long, Feed> merged = new LinkedHashMap<>();
+        events.forEach(event -> merged.put(event.getEventId(), event));
+        pulled.forEach(event -> merged.putIfAbsent(event.getEventId(), event));
+
+        return merged.values().stream()
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Перестраивает ленты по владельцам пачками: для каждого владельца удаляются старые записи
+     * и вставляются последние {@code capacity} событий его друзей. Ни один запрос не соединяет
+     * feed и friendship целиком, а ленты сразу укладываются в ограничение размера.
+     */
+    @Override
+    public int rebuild() {
+        String ownersQuery = "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?";
+        String deleteQuery = "DELETE FROM timeline WHERE owner_id = ?";
+        String insertQuery = "INSERT INTO timeline(owner_id, feed_id, author_id, time_stamp) " +
+                "SELECT ?, id, user_id, time_stamp FROM feed WHERE user_id = ANY(?) " +
+                "ORDER BY time_stamp DESC, id DESC LIMIT ?";
+
+        int rebuilt = 0;
+        long lastOwner = 0;
+        List<Long> owners;
+
+        do {
+            owners = jdbcTemplate.queryForList(ownersQuery, Long.class, lastOwner, REBUILD_BATCH_SIZE);
+            if (owners.isEmpty()) {
+                break;
+            }
+            lastOwner = owners.get(owners.size() - 1);
+
+            List<Object[]> deletes = new ArrayList<>(owners.size());
+            List<Object[]> inserts = new ArrayList<>(owners.size());
+
+            for (Long owner : owners) {
+                deletes.add(new Object[]{owner});
+
+                // то же правило, что и при записи: события авторов с большим числом подписчиков не раскладываются
+                Long[] authors = friendGraph.getFriends(owner).stream()
+                        .filter(friendId -> friendGraph.getFollowerCount(friendId) <= fanOutLimit)
+                        .toArray(Long[]::new);
+                if (authors.length > 0) {
+                    inserts.add(new Object[]{owner, authors, capacity});
+                }
+            }
+
+            jdbcTemplate.batchUpdate(deleteQuery, deletes);
+            if (!inserts.isEmpty()) {
+                rebuilt += Arrays.stream(jdbcTemplate.batchUpdate(insertQuery, inserts)).sum();
+            }
+        } while (owners.size() == REBUILD_BATCH_SIZE);
+
+        log.info("Ленты друзей перестроены, записей: {}", rebuilt);
+        return rebuilt;
+    }
+
+    // владелец, в ленту которого пришло count записей, обрезается с вероятностью count / trimThreshold
+    private List<Long> ownersToTrim(Map<Long, Integer> inserts) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        return inserts.entrySet().stream()
+                .filter(entry -> random.nextInt(trimThreshold) < entry.getValue())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // оставляет в лентах владельцев не больше capacity последних записей, по запросу на владельца
+    private void trim(List<Long> owners) {
+        if (owners.isEmpty()) {
+            return;
+        }
+
+        String sqlQuery = "DELETE FROM timeline WHERE owner_id = ? AND (time_stamp, feed_id) IN (" +
+                "SELECT time_stamp, feed_id FROM timeline WHERE owner_id = ? " +
+                "ORDER BY time_stamp DESC, feed_id DESC OFFSET ? ROWS)";
+
+        List<Object[]> rows = owners.stream()
+                .map(owner -> new Object[]{owner, owner, capacity})
+                .toList();
+        int removed = Arrays.stream(jdbcTemplate.batchUpdate(sqlQuery, rows)).sum();
+
+        log.debug("Ленты {} владельцев обрезаны, удалено записей: {}", owners.size(), removed);
+    }
+}
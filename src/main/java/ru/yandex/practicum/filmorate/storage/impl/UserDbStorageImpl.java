@@ -13,20 +13,31 @@ import ru.yandex.practicum.filmorate.mappers.UserRowMapper;
 import ru.yandex.practicum.filmorate.mappers.mapstruct.UserMapper;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.cache.PopularFilmsLeaderboard;
 
 import java.sql.PreparedStatement;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component("userDbStorage")
 @RequiredArgsConstructor
 public class UserDbStorageImpl implements UserStorage {
 
+    // сколько пользователей читается одним запросом при потоковой выгрузке
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final JdbcTemplate jdbcTemplate;
     private final UserMapper mapper;
     private final UserRowMapper userRowMapper;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final FriendGraph friendGraph;
 
     @Override
     public List<User> findAll() {
@@ -34,6 +45,32 @@ public class UserDbStorageImpl implements UserStorage {
         return jdbcTemplate.query(sqlQuery, userRowMapper::mapRowToUser);
     }
 
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        String sqlQuery = "SELECT id, email, login, name, birthday from users WHERE id > ? ORDER BY id LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, userRowMapper::mapRowToUser, afterId, limit);
+    }
+
+    /**
+     * Как и фильмы, пользователи читаются короткими запросами по ключу, а не одним открытым ResultSet:
+     * соединение с базой возвращается в пул между пачками и не удерживается, пока клиент читает ответ.
+     */
+    @Override
+    public void streamAll(long afterId, Consumer<User> action) {
+        log.info("Потоковая выгрузка пользователей после id = {}", afterId);
+        long lastId = afterId;
+        List<User> chunk;
+
+        do {
+            chunk = findPage(lastId, STREAM_CHUNK_SIZE);
+            chunk.forEach(action);
+
+            if (!chunk.isEmpty()) {
+                lastId = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == STREAM_CHUNK_SIZE);
+    }
+
     @Override
     public User findById(Long id) {
         Optional<User> resultUser;
@@ -56,6 +93,16 @@ public class UserDbStorageImpl implements UserStorage {
         }
     }
 
+    @Override
+    public List<User> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String sqlQuery = "SELECT id, email, login, name, birthday from users WHERE id = ANY(?) ORDER BY id";
+        return jdbcTemplate.query(sqlQuery, userRowMapper::mapRowToUser, (Object) ids.toArray(new Long[0]));
+    }
+
     @Override
     public User create(User user) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -147,8 +194,16 @@ public class UserDbStorageImpl implements UserStorage {
     @Transactional
     public void delete(Long id) {
         try {
+            // лайки пользователя удалятся каскадно, поэтому заранее уменьшаем счётчики фильмов
+            String sqlLikes = "UPDATE films SET likes_count = likes_count - 1 " +
+                    "WHERE id IN (SELECT film_id FROM film_like WHERE user_id = ?)";
+            jdbcTemplate.update(sqlLikes, id);
+            leaderboard.invalidate();
+
             String sql = "DELETE FROM users WHERE id = ?";
             jdbcTemplate.update(sql, id);
+            likeMatrix.onUserDeleted(id);
+            friendGraph.onUserDeleted(id);
             log.info("Пользователь с id = {} был успешно удален.", id);
         } catch (Exception e) {
             log.error("Ошибка при удалении пользователя с id = {}: {}", id, e.getMessage());
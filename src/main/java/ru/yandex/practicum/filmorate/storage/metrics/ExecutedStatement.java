@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import java.util.List;
+
+/**
+ * SQL-запрос, выполненный во время {@link SqlStatementCounter#record(Runnable)}, вместе
+ * со значениями параметров по порядку. Для пачки запросов сохраняются параметры последней строки.
+ */
+public record ExecutedStatement(String sql, List<Object> parameters) {
+}
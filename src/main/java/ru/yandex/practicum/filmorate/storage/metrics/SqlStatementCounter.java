@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Считает SQL-запросы, выполненные текущим потоком, и время их выполнения. Источник данных
+ * оборачивается так, что каждый вызов execute* у Statement увеличивает счётчики потока;
+ * пачка executeBatch считается одним обращением к базе. Разница снимков до и после
+ * участка кода - его расход (см. {@link SqlUsage}).
+ * Запросы дольше filmorate.sql.slow-query-ms пишутся в лог вместе с параметрами.
+ * Для тестов запросы участка кода можно записать целиком, с текстом и параметрами (см. {@link #record}).
+ */
+@Slf4j
+@Component
+public class SqlStatementCounter implements BeanPostProcessor {
+
+    // [0] - число запросов, [1] - суммарное время в наносекундах
+    private static final ThreadLocal<long[]> USAGE = ThreadLocal.withInitial(() -> new long[2]);
+
+    // запросы текущего потока, пока идёт record; null - запись выключена
+    private static final ThreadLocal<List<ExecutedStatement>> RECORDED = new ThreadLocal<>();
+
+    private final long slowQueryNanos;
+
+    public SqlStatementCounter(@Value("${filmorate.sql.slow-query-ms:200}") long slowQueryMs) {
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMs);
+    }
+
+    // число запросов, выполненных текущим потоком с его запуска
+    public static long current() {
+        return USAGE.get()[0];
+    }
+
+    public static SqlUsage snapshot() {
+        long[] usage = USAGE.get();
+        return new SqlUsage(usage[0], usage[1]);
+    }
+
+    // расход SQL на выполнение action в текущем потоке
+    public static SqlUsage measure(Runnable action) {
+        SqlUsage before = snapshot();
+        action.run();
+        return snapshot().since(before);
+    }
+
+    // запросы, которые выполнил action в текущем потоке, в порядке выполнения
+    public static List<ExecutedStatement> record(Runnable action) {
+        List<ExecutedStatement> outer = RECORDED.get();
+        List<ExecutedStatement> recorded = new ArrayList<>();
+        RECORDED.set(recorded);
+        try {
+            action.run();
+        } finally {
+            RECORDED.set(outer);
+        }
+        return recorded;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource dataSource)) {
+            return bean;
+        }
+
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return counting(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return counting(super.getConnection(username, password));
+            }
+        };
+    }
+
+    private Connection counting(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    // prepareStatement, prepareCall и createStatement возвращают оборачиваемый тип
+                    if (result instanceof Statement statement
+                            && Statement.class.isAssignableFrom(method.getReturnType())) {
+                        String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                        return counting(statement, method.getReturnType(), sql);
+                    }
+                    return result;
+                });
+    }
+
+    private Object counting(Statement statement, Class<?> type, String preparedSql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            String name = method.getName();
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameters.put(index, "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            }
+
+            if (!name.startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+
+            long started = System.nanoTime();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                long elapsed = System.nanoTime() - started;
+                long[] usage = USAGE.get();
+                usage[0]++;
+                usage[1] += elapsed;
+
+                String sql = preparedSql != null ? preparedSql : args != null ? String.valueOf(args[0]) : null;
+                List<ExecutedStatement> recorded = RECORDED.get();
+                if (recorded != null) {
+                    recorded.add(new ExecutedStatement(sql,
+                            Collections.unmodifiableList(new ArrayList<>(parameters.values()))));
+                }
+
+                if (elapsed > slowQueryNanos) {
+                    log.warn("Медленный SQL-запрос, {} мс: {} параметры: {}",
+                            TimeUnit.NANOSECONDS.toMillis(elapsed), sql, parameters.values());
+                }
+            }
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
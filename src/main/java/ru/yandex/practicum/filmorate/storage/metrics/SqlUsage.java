@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Число SQL-запросов и суммарное время их выполнения. Разность двух снимков
+ * {@link SqlStatementCounter#snapshot()} - расход на участке кода.
+ */
+public record SqlUsage(long statements, long nanos) {
+
+    public SqlUsage since(SqlUsage before) {
+        return new SqlUsage(statements - before.statements, nanos - before.nanos);
+    }
+
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Проверка бюджета для сценариев и интеграционных прогонов: бросает исключение,
+     * если запросов больше, чем maxStatements.
+     */
+    public SqlUsage requireAtMost(long maxStatements, String operation) {
+        if (statements > maxStatements) {
+            throw new IllegalStateException(String.format("%s: выполнено %d SQL-запросов при бюджете %d",
+                    operation, statements, maxStatements));
+        }
+        return this;
+    }
+}
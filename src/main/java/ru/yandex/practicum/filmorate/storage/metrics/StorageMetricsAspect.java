@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.storage.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики публичных методов хранилищ *DbStorageImpl и FilmRowMappers:
+ * filmorate.storage.call - время вызова с перцентилями p50/p99/p999,
+ * filmorate.storage.rows - число возвращённых строк (размер коллекции, 0 или 1 для одного объекта),
+ * filmorate.storage.statements - число SQL-запросов за вызов, включая вложенные вызовы других хранилищ.
+ * Все метрики помечены тегами class и method и доступны в /actuator/metrics и /actuator/prometheus.
+ */
+@Aspect
+@Component
+public class StorageMetricsAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Method, Meters> meters = new ConcurrentHashMap<>();
+
+    public StorageMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(public * ru.yandex.practicum.filmorate.storage.impl.*DbStorageImpl.*(..)) " +
+            "|| execution(public * ru.yandex.practicum.filmorate.mappers.FilmRowMappers.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        Meters methodMeters = meters.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(),
+                this::register);
+
+        long statementsBefore = SqlStatementCounter.current();
+        long started = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            methodMeters.rows().record(rows(result));
+            return result;
+        } finally {
+            methodMeters.call().record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            methodMeters.statements().record(SqlStatementCounter.current() - statementsBefore);
+        }
+    }
+
+    private Meters register(Method method) {
+        String className = method.getDeclaringClass().getSimpleName();
+        String methodName = method.getName();
+
+        return new Meters(
+                Timer.builder("filmorate.storage.call")
+                        .description("Время вызова метода хранилища")
+                        .tag("class", className)
+                        .tag("method", methodName)
+                        .publishPercentiles(0.5, 0.99, 0.999)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry),
+                DistributionSummary.builder("filmorate.storage.rows")
+                        .description("Строк, возвращённых методом хранилища")
+                        .tag("class", className)
+                        .tag("method", methodName)
+                        .register(meterRegistry),
+                DistributionSummary.builder("filmorate.storage.statements")
+                        .description("SQL-запросов за вызов метода хранилища")
+                        .tag("class", className)
+                        .tag("method", methodName)
+                        .register(meterRegistry));
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof Optional<?> optional) {
+            return optional.isPresent() ? 1 : 0;
+        }
+        return result == null ? 0 : 1;
+    }
+
+    private record Meters(Timer call, DistributionSummary rows, DistributionSummary statements) {
+    }
+}
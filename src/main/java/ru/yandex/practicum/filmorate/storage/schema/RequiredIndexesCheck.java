@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.storage.schema;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Проверка при старте, что у горячих запросов есть индексы. Индекс подходит, если его
+ * первые столбцы совпадают с ожидаемыми по порядку, поэтому в счёт идут и первичные ключи.
+ * Если какого-то индекса нет, приложение не запускается.
+ */
+@Slf4j
+@Component
+public class RequiredIndexesCheck implements ApplicationRunner {
+
+    private static final List<RequiredIndex> REQUIRED = List.of(
+            new RequiredIndex("films", "likes_count"),
+            new RequiredIndex("film_genre", "film_id"),
+            new RequiredIndex("film_genre", "genre_id"),
+            new RequiredIndex("film_director", "film_id"),
+            new RequiredIndex("film_director", "director_id"),
+            new RequiredIndex("film_like", "user_id", "film_id"),
+            new RequiredIndex("film_like", "film_id"),
+            new RequiredIndex("friendship", "user1_id"),
+            new RequiredIndex("friendship", "user2_id"),
+            new RequiredIndex("feed", "user_id", "time_stamp"),
+            new RequiredIndex("reviews", "film_id", "useful"),
+            new RequiredIndex("reviews", "useful"),
+            new RequiredIndex("useful", "review_id", "user_id"),
+            new RequiredIndex("timeline", "owner_id", "time_stamp"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    public RequiredIndexesCheck(JdbcTemplate jdbcTemplate,
+                                @Value("${filmorate.schema.verify-indexes:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, List<List<String>>> indexesByTable = loadIndexes();
+
+        List<RequiredIndex> missing = REQUIRED.stream()
+                .filter(required -> indexesByTable.getOrDefault(required.table(), List.of()).stream()
+                        .noneMatch(required::isCoveredBy))
+                .toList();
+
+        if (!missing.isEmpty()) {
+            log.error("В схеме нет индексов: {}", missing);
+            throw new IllegalStateException("В схеме нет индексов: " + missing);
+        }
+
+        log.info("Все ожидаемые индексы на месте: {}", REQUIRED.size());
+    }
+
+    // столбцы каждого индекса текущей схемы по порядку, сгруппированные по таблицам
+    private Map<String, List<List<String>>> loadIndexes() {
+        String indexesQuery = "SELECT table_name, index_name, column_name " +
+                "FROM information_schema.index_columns " +
+                "WHERE table_schema = SCHEMA() " +
+                "ORDER BY table_name, index_name, ordinal_position";
+
+        Map<String, Map<String, List<String>>> columns = new HashMap<>();
+        jdbcTemplate.query(indexesQuery, (RowCallbackHandler) resultSet -> columns
+                .computeIfAbsent(resultSet.getString("table_name").toLowerCase(), key -> new HashMap<>())
+                .computeIfAbsent(resultSet.getString("index_name"), key -> new ArrayList<>())
+                .add(resultSet.getString("column_name").toLowerCase()));
+
+        Map<String, List<List<String>>> indexesByTable = new HashMap<>();
+        columns.forEach((table, indexes) -> indexesByTable.put(table, List.copyOf(indexes.values())));
+        return indexesByTable;
+    }
+
+    private record RequiredIndex(String table, List<String> columns) {
+
+        RequiredIndex(String table, String... columns) {
+            this(table, List.of(columns));
+        }
+
+        boolean isCoveredBy(List<String> indexColumns) {
+            return indexColumns.size() >= columns.size()
+                    && indexColumns.subList(0, columns.size()).equals(columns);
+        }
+
+        @Override
+        public String toString() {
+            return table + columns;
+        }
+    }
+}
@@ -1,23 +1,4 @@
---Включите в файл schema.sql создание таблиц.
---Если вам нужны некоторые данные в базе, их инициализация
---обычно описывается в файле data.sql — создайте его там же, где и schema.sql.
---Чтобы избежать ошибок, связанных с многократным применением скрипта к БД,
---добавьте условие IF NOT EXISTS при создании таблиц и индексов.
-DROP TABLE IF EXISTS users CASCADE;
-DROP TABLE IF EXISTS friendship CASCADE;
-DROP TABLE IF EXISTS films CASCADE;
-DROP TABLE IF EXISTS mpa CASCADE;
-DROP TABLE IF EXISTS genres CASCADE;
-DROP TABLE IF EXISTS directors CASCADE;
-DROP TABLE IF EXISTS film_like CASCADE;
-DROP TABLE IF EXISTS film_genre CASCADE;
-DROP TABLE IF EXISTS film_mpa CASCADE;
-DROP TABLE IF EXISTS reviews CASCADE;
-DROP TABLE IF EXISTS useful CASCADE;
-DROP TABLE IF EXISTS film_director CASCADE;
-DROP TABLE IF EXISTS feed CASCADE;
-
-CREATE TABLE IF NOT EXISTS users (
+CREATE TABLE users (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     email VARCHAR NOT NULL UNIQUE,
     login VARCHAR NOT NULL UNIQUE,
@@ -25,7 +6,7 @@ CREATE TABLE IF NOT EXISTS users (
     birthday DATE
 );
 
-CREATE TABLE IF NOT EXISTS friendship (
+CREATE TABLE friendship (
     user1_id INT NOT NULL,
     user2_id INT NOT NULL,
     FOREIGN KEY (user1_id) REFERENCES users (id) ON DELETE CASCADE,
@@ -33,45 +14,48 @@ CREATE TABLE IF NOT EXISTS friendship (
     PRIMARY KEY (user1_id, user2_id)
 );
 
-CREATE TABLE IF NOT EXISTS mpa (
+CREATE TABLE mpa (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR NOT NULL
 );
 
-CREATE TABLE IF NOT EXISTS directors (
+CREATE TABLE directors (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR NOT NULL
 );
 
-CREATE TABLE IF NOT EXISTS films (
+CREATE TABLE films (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR NOT NULL,
     description VARCHAR(200),
     releaseDate DATE,
     duration INT,
     mpa_id INT,
+    likes_count INT DEFAULT 0 NOT NULL,
     FOREIGN KEY (mpa_id) REFERENCES mpa (id) ON DELETE CASCADE
 );
 
-CREATE TABLE IF NOT EXISTS reviews (
+CREATE TABLE reviews (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     content VARCHAR,
     is_positive BOOLEAN,
     user_id INT NOT NULL,
     film_id INT NOT NULL,
+    useful INT DEFAULT 0 NOT NULL,
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
     FOREIGN KEY (film_id) REFERENCES films (id) ON DELETE CASCADE
 );
 
-CREATE TABLE IF NOT EXISTS useful(
+CREATE TABLE useful(
     review_id INT NOT NULL,
     is_like BOOLEAN,
     user_id INT NOT NULL,
     FOREIGN KEY(review_id) REFERENCES reviews(id),
-    FOREIGN KEY(user_id) REFERENCES users(id)
+    FOREIGN KEY(user_id) REFERENCES users(id),
+    PRIMARY KEY (review_id, user_id)
 );
 
-CREATE TABLE IF NOT EXISTS feed (
+CREATE TABLE feed (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     entity_id INT NOT NULL,
     user_id INT NOT NULL,
@@ -81,12 +65,12 @@ CREATE TABLE IF NOT EXISTS feed (
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
 );
 
-CREATE TABLE IF NOT EXISTS genres (
+CREATE TABLE genres (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR NOT NULL
 );
 
-CREATE TABLE IF NOT EXISTS film_like (
+CREATE TABLE film_like (
     user_id INT NOT NULL,
     film_id INT NOT NULL,
     FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE,
@@ -94,7 +78,7 @@ CREATE TABLE IF NOT EXISTS film_like (
     PRIMARY KEY (user_id, film_id)
 );
 
-CREATE TABLE IF NOT EXISTS film_genre (
+CREATE TABLE film_genre (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     film_id INTEGER NOT NULL,
     genre_id INTEGER NOT NULL,
@@ -102,10 +86,20 @@ CREATE TABLE IF NOT EXISTS film_genre (
     FOREIGN KEY (genre_id) REFERENCES genres (id) ON DELETE CASCADE
 );
 
-CREATE TABLE IF NOT EXISTS film_director (
+CREATE TABLE film_director (
     id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     film_id INTEGER NOT NULL,
     director_id INTEGER NOT NULL,
     FOREIGN KEY (film_id) REFERENCES films (id) ON DELETE CASCADE,
     FOREIGN KEY (director_id) REFERENCES directors (id) ON DELETE CASCADE
 );
+
+CREATE TABLE timeline (
+    owner_id INT NOT NULL,
+    feed_id INT NOT NULL,
+    author_id INT NOT NULL,
+    time_stamp LONG NOT NULL,
+    PRIMARY KEY (owner_id, time_stamp, feed_id),
+    FOREIGN KEY (owner_id) REFERENCES users (id) ON DELETE CASCADE,
+    FOREIGN KEY (feed_id) REFERENCES feed (id) ON DELETE CASCADE
+);
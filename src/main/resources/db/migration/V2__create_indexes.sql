@@ -0,0 +1,19 @@
+-- Индексы под запросы хранилищ. Список индексов, без которых приложение не стартует,
+-- задан в RequiredIndexesCheck - при добавлении индекса под новый запрос дополните и его.
+
+CREATE INDEX films_likes_idx ON films (likes_count DESC, id);
+
+CREATE INDEX film_genre_film_idx ON film_genre (film_id, genre_id);
+CREATE INDEX film_genre_genre_idx ON film_genre (genre_id, film_id);
+
+CREATE INDEX film_director_film_idx ON film_director (film_id, director_id);
+CREATE INDEX film_director_director_idx ON film_director (director_id, film_id);
+
+CREATE INDEX film_like_film_idx ON film_like (film_id, user_id);
+
+CREATE INDEX friendship_user2_idx ON friendship (user2_id, user1_id);
+
+CREATE INDEX feed_user_time_idx ON feed (user_id, time_stamp, id);
+
+CREATE INDEX reviews_film_useful_idx ON reviews (film_id, useful DESC, id);
+CREATE INDEX reviews_useful_idx ON reviews (useful DESC, id);
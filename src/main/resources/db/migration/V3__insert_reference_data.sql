@@ -9,4 +9,4 @@ INSERT INTO genres(name) values ('Драма');
 INSERT INTO genres(name) values ('Мультфильм');
 INSERT INTO genres(name) values ('Триллер');
 INSERT INTO genres(name) values ('Документальный');
-INSERT INTO genres(name) values ('Боевик');
\ No newline at end of file
+INSERT INTO genres(name) values ('Боевик');
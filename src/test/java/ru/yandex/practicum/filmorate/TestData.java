@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Наполнение базы для интеграционных тестов напрямую через SQL, в обход сервисов и кэшей.
+ * После вставки кэши, читающие эти таблицы, нужно сбросить.
+ */
+public final class TestData {
+
+    private TestData() {
+    }
+
+    // удаляет пользователей и фильмы вместе со всеми связанными строками
+    public static void clear(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.update("DELETE FROM useful");
+        jdbcTemplate.update("DELETE FROM reviews");
+        jdbcTemplate.update("DELETE FROM films");
+        jdbcTemplate.update("DELETE FROM directors");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    public static List<Long> insertUsers(JdbcTemplate jdbcTemplate, int count) {
+        long first = nextId(jdbcTemplate, "users");
+        for (int i = 0; i < count; i++) {
+            String login = "user" + (first + i);
+            jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                    login + "@mail.ru", login, login, Date.valueOf(LocalDate.of(1990, 1, 1)));
+        }
+        return idsFrom(jdbcTemplate, "users", first);
+    }
+
+    // фильмы i-го по счёту выходят в 2000 + i % years году и относятся к жанрам 1 + i % 6 и 1 + (i + 2) % 6
+    public static List<Long> insertFilms(JdbcTemplate jdbcTemplate, int count, int years) {
+        long first = nextId(jdbcTemplate, "films");
+        for (int i = 0; i < count; i++) {
+            jdbcTemplate.update("INSERT INTO films (name, description, releaseDate, duration, mpa_id) " +
+                            "VALUES (?, ?, ?, ?, ?)", "Фильм " + i, "Описание",
+                    Date.valueOf(LocalDate.of(2000 + i % years, 1, 1)), 100, 1 + i % 5);
+        }
+
+        List<Long> ids = idsFrom(jdbcTemplate, "films", first);
+        for (int i = 0; i < ids.size(); i++) {
+            jdbcTemplate.update("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?), (?, ?)",
+                    ids.get(i), 1 + i % 6, ids.get(i), 1 + (i + 2) % 6);
+        }
+        return ids;
+    }
+
+    // режиссёр всех переданных фильмов
+    public static long insertDirector(JdbcTemplate jdbcTemplate, List<Long> filmIds) {
+        jdbcTemplate.update("INSERT INTO directors (name) VALUES (?)", "Режиссёр");
+        Long directorId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM directors", Long.class);
+
+        for (Long filmId : filmIds) {
+            jdbcTemplate.update("INSERT INTO film_director (film_id, director_id) VALUES (?, ?)", filmId, directorId);
+        }
+        return directorId;
+    }
+
+    private static long nextId(JdbcTemplate jdbcTemplate, String table) {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+        return max == null ? 1 : max + 1;
+    }
+
+    private static List<Long> idsFrom(JdbcTemplate jdbcTemplate, String table, long first) {
+        return jdbcTemplate.queryForList("SELECT id FROM " + table + " WHERE id >= ? ORDER BY id", Long.class, first);
+    }
+}
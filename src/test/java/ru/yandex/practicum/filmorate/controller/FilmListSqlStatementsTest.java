@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.storage.cache.PopularFilmsLeaderboard;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlStatementCounter;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlUsage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Списки фильмов загружаются постоянным числом запросов: фильмы, жанры и режиссёры читаются
+ * пачками, рейтинги берутся из кэша справочника. Число запросов для одного и для ста фильмов
+ * должно совпадать.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class FilmListSqlStatementsTest {
+
+    private static final int MAX_STATEMENTS = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PopularFilmsLeaderboard leaderboard;
+
+    @BeforeEach
+    void clean() {
+        TestData.clear(jdbcTemplate);
+        leaderboard.invalidate();
+    }
+
+    @Test
+    void findAllUsesConstantNumberOfStatements() throws Exception {
+        assertConstantStatements("/films");
+    }
+
+    @Test
+    void findPageUsesConstantNumberOfStatements() throws Exception {
+        assertConstantStatements("/films?afterId=0&limit=100");
+    }
+
+    @Test
+    void popularFilmsUseConstantNumberOfStatements() throws Exception {
+        assertConstantStatements("/films/popular?count=100");
+    }
+
+    private void assertConstantStatements(String url) throws Exception {
+        insertFilms(1);
+        SqlUsage one = measure(url, 1);
+
+        insertFilms(99);
+        SqlUsage hundred = measure(url, 100);
+
+        one.requireAtMost(MAX_STATEMENTS, url + " для 1 фильма");
+        hundred.requireAtMost(MAX_STATEMENTS, url + " для 100 фильмов");
+        assertEquals(one.statements(), hundred.statements(), url);
+    }
+
+    private SqlUsage measure(String url, int expectedFilms) throws Exception {
+        // первый запрос прогревает кэши (рейтинг популярных фильмов загружается лениво)
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+
+        SqlUsage before = SqlStatementCounter.snapshot();
+        mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(expectedFilms));
+        return SqlStatementCounter.snapshot().since(before);
+    }
+
+    private void insertFilms(int count) {
+        TestData.insertDirector(jdbcTemplate, TestData.insertFilms(jdbcTemplate, count, 1));
+        leaderboard.invalidate();
+    }
+}
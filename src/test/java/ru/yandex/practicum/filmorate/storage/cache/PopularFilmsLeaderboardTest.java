@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Рейтинг в памяти должен совпадать с SQL-запросом популярных фильмов для всех корзин (жанр, год),
+ * в том числе после конкурентных лайков, сброса и перезагрузки рейтинга посреди потока событий.
+ * Размер корзины уменьшен, чтобы лидеры выбывали из неё и корзины перестраивались.
+ */
+@SpringBootTest(properties = "filmorate.popular.leaderboard-size=5")
+@ActiveProfiles("test")
+class PopularFilmsLeaderboardTest {
+
+    private static final int USERS = 30;
+    private static final int FILMS = 40;
+    private static final int YEARS = 4;
+    private static final int THREADS = 8;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmLikeStorage filmLikeStorage;
+
+    @Autowired
+    private PopularFilmsLeaderboard leaderboard;
+
+    private List<Long> userIds;
+    private List<Long> filmIds;
+
+    @BeforeEach
+    void seed() {
+        TestData.clear(jdbcTemplate);
+        userIds = TestData.insertUsers(jdbcTemplate, USERS);
+        filmIds = TestData.insertFilms(jdbcTemplate, FILMS, YEARS);
+        leaderboard.invalidate();
+    }
+
+    @Test
+    void matchesDatabaseAfterConcurrentLikesAndReloads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            SplittableRandom random = new SplittableRandom(thread);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 300; i++) {
+                    long filmId = filmIds.get(random.nextInt(FILMS));
+                    long userId = userIds.get(random.nextInt(USERS));
+
+                    if (random.nextInt(3) > 0) {
+                        filmLikeStorage.addLike(filmId, userId);
+                    } else {
+                        filmLikeStorage.removeLike(filmId, userId);
+                    }
+
+                    // загрузка рейтинга посреди потока лайков не должна приводить к двойному учёту
+                    if (i % 50 == 0) {
+                        leaderboard.invalidate();
+                    }
+                    if (i % 7 == 0) {
+                        leaderboard.getTop(5, null, null);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void matchesDatabaseAfterLeadersLoseLikes() {
+        for (int i = 0; i < FILMS; i++) {
+            for (int user = 0; user < i % USERS; user++) {
+                filmLikeStorage.addLike(filmIds.get(i), userIds.get(user));
+            }
+        }
+        assertMatchesDatabase();
+
+        // лидеры теряют лайки и опускаются ниже фильмов, не попавших в корзины
+        for (int i = FILMS - 10; i < FILMS; i++) {
+            for (int user = 0; user < i % USERS; user++) {
+                filmLikeStorage.removeLike(filmIds.get(i), userIds.get(user));
+            }
+        }
+        assertMatchesDatabase();
+    }
+
+    @Test
+    void matchesDatabaseWhenLikesTieAtBucketBoundary() {
+        // фильмов больше размера корзины, и у всех поровну лайков: порядок решает id
+        assertMatchesDatabase();
+
+        for (int i = FILMS / 2; i < FILMS; i++) {
+            filmLikeStorage.addLike(filmIds.get(i), userIds.get(0));
+            filmLikeStorage.addLike(filmIds.get(i), userIds.get(1));
+        }
+        assertMatchesDatabase();
+
+        // лидер с наименьшим id опускается к остальным и снова равен фильмам вне корзины
+        filmLikeStorage.removeLike(filmIds.get(FILMS / 2), userIds.get(0));
+        filmLikeStorage.removeLike(filmIds.get(FILMS / 2), userIds.get(1));
+        assertMatchesDatabase();
+    }
+
+    private void assertMatchesDatabase() {
+        List<Long> genres = new ArrayList<>();
+        genres.add(null);
+        for (long genre = 1; genre <= 6; genre++) {
+            genres.add(genre);
+        }
+
+        List<Long> years = new ArrayList<>();
+        years.add(null);
+        for (long year = 2000; year < 2000 + YEARS; year++) {
+            years.add(year);
+        }
+
+        for (long count = 1; count <= 5; count++) {
+            for (Long genre : genres) {
+                for (Long year : years) {
+                    assertEquals(popularFromDatabase(count, genre, year),
+                            leaderboard.getTop(count, genre, year).orElseThrow(),
+                            String.format("count = %d, жанр = %s, год = %s", count, genre, year));
+                }
+            }
+        }
+    }
+
+    private List<Long> popularFromDatabase(long count, Long genreId, Long year) {
+        String sqlQuery = "SELECT f.id FROM films AS f " +
+                "WHERE (CAST(? AS INT) IS NULL OR EXTRACT(YEAR FROM f.releaseDate) = ?) " +
+                "AND (CAST(? AS INT) IS NULL OR EXISTS " +
+                "(SELECT 1 FROM film_genre AS fg WHERE fg.film_id = f.id AND fg.genre_id = ?)) " +
+                "ORDER BY f.likes_count DESC, f.id " +
+                "LIMIT ?";
+        return jdbcTemplate.queryForList(sqlQuery, Long.class, year, year, genreId, genreId, count);
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.model.enums.Operation;
+import ru.yandex.practicum.filmorate.storage.cache.FriendGraph;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Событие удалённого пользователя в пачке из очереди не должно ронять всю пачку:
+ * остальные события записываются и попадают в ленты друзей.
+ * Фоновый поток почти не просыпается, очередь дописывается явным flush.
+ */
+@SpringBootTest(properties = {
+        "filmorate.feed.write-mode=async",
+        "filmorate.feed.flush-interval-ms=3600000"})
+@ActiveProfiles("test")
+class FeedWriterTest {
+
+    private static final long MISSING_USER = 1_000_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FeedWriter feedWriter;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    void seed() {
+        TestData.clear(jdbcTemplate);
+        userIds = TestData.insertUsers(jdbcTemplate, 3);
+
+        // третий пользователь подписан на первого и видит его события в своей ленте
+        jdbcTemplate.update("INSERT INTO friendship (user1_id, user2_id) VALUES (?, ?)", userIds.get(2),
+                userIds.get(0));
+        friendGraph.invalidate();
+    }
+
+    @Test
+    void failedRowDoesNotDropRestOfBatch() {
+        feedWriter.write(event(userIds.get(0), 1));
+        feedWriter.write(event(MISSING_USER, 2));
+        feedWriter.write(event(userIds.get(1), 3));
+        feedWriter.write(event(userIds.get(0), 4));
+
+        feedWriter.flush(List.of(userIds.get(0), userIds.get(1), MISSING_USER));
+
+        assertEquals(2, countFeed(userIds.get(0)));
+        assertEquals(1, countFeed(userIds.get(1)));
+        assertEquals(0, countFeed(MISSING_USER));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM timeline WHERE owner_id = ?",
+                Integer.class, userIds.get(2)));
+    }
+
+    private int countFeed(long userId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed WHERE user_id = ?", Integer.class, userId);
+    }
+
+    private static Feed event(long userId, long timestamp) {
+        return Feed.builder()
+                .userId(userId)
+                .entityId(1L)
+                .timestamp(timestamp)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .build();
+    }
+}
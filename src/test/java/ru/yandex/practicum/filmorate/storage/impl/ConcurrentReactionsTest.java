@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Счётчики films.likes_count и reviews.useful обновляются инкрементом в той же транзакции,
+ * что и строка лайка или оценки. Под конкурентной нагрузкой из многих потоков они должны
+ * совпадать с пересчётом по таблицам film_like и useful.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ConcurrentReactionsTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 400;
+    private static final int USERS = 20;
+    private static final int FILMS = 5;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmLikeStorage filmLikeStorage;
+
+    @Autowired
+    private ReviewStorage reviewStorage;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    private List<Long> userIds;
+    private List<Long> filmIds;
+    private List<Long> reviewIds;
+
+    @BeforeEach
+    void seed() {
+        TestData.clear(jdbcTemplate);
+        userIds = TestData.insertUsers(jdbcTemplate, USERS);
+        filmIds = TestData.insertFilms(jdbcTemplate, FILMS, 1);
+
+        for (int i = 0; i < FILMS; i++) {
+            jdbcTemplate.update("INSERT INTO reviews (content, is_positive, user_id, film_id) VALUES (?, ?, ?, ?)",
+                    "Отзыв " + i, true, userIds.get(i), filmIds.get(i));
+        }
+        reviewIds = jdbcTemplate.queryForList("SELECT id FROM reviews ORDER BY id", Long.class);
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void likesCountMatchesLikesUnderConcurrentLikesAndUnlikes() throws Exception {
+        runConcurrently(random -> {
+            long filmId = filmIds.get(random % FILMS);
+            long userId = userIds.get((random >>> 8) % USERS);
+
+            if ((random >>> 16) % 3 > 0) {
+                filmLikeStorage.addLike(filmId, userId);
+            } else {
+                filmLikeStorage.removeLike(filmId, userId);
+            }
+        });
+
+        String sqlQuery = "SELECT f.id, f.likes_count, " +
+                "(SELECT COUNT(*) FROM film_like fl WHERE fl.film_id = f.id) AS likes " +
+                "FROM films f";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sqlQuery)) {
+            assertEquals(((Number) row.get("likes")).longValue(), ((Number) row.get("likes_count")).longValue(),
+                    "likes_count фильма " + row.get("id"));
+        }
+    }
+
+    @Test
+    void usefulMatchesReactionsUnderConcurrentReactions() throws Exception {
+        runConcurrently(random -> {
+            long reviewId = reviewIds.get(random % FILMS);
+            long userId = userIds.get((random >>> 8) % USERS);
+
+            switch ((random >>> 16) % 3) {
+                case 0 -> reviewStorage.likeOrDislikeToReview(reviewId, userId, true);
+                case 1 -> reviewStorage.likeOrDislikeToReview(reviewId, userId, false);
+                default -> reviewStorage.deleteLikeOrDislike(reviewId, userId, true);
+            }
+        });
+
+        assertUsefulMatchesReactions();
+    }
+
+    /**
+     * Первая оценка, вставленная параллельной транзакцией, которая ещё не закоммичена: MERGE не видит
+     * строку, его вставка ждёт коммита и получает нарушение ключа, после чего оценка повторяется
+     * и обновляет уже существующую строку.
+     */
+    @Test
+    void firstReactionIsRetriedAfterConcurrentInsert() throws Exception {
+        long reviewId = reviewIds.get(0);
+        long userId = userIds.get(USERS - 1);
+
+        List<Future<?>> dislike = new ArrayList<>();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO useful (review_id, user_id, is_like) VALUES (?, ?, ?)",
+                    reviewId, userId, true);
+            jdbcTemplate.update("UPDATE reviews SET useful = useful + 1 WHERE id = ?", reviewId);
+
+            dislike.add(executor.submit(() -> reviewStorage.likeOrDislikeToReview(reviewId, userId, false)));
+            try {
+                // даём параллельной оценке дойти до вставки и встать в ожидание блокировки строки
+                TimeUnit.MILLISECONDS.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        dislike.get(0).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Boolean.FALSE, jdbcTemplate.queryForObject(
+                "SELECT is_like FROM useful WHERE review_id = ? AND user_id = ?", Boolean.class, reviewId, userId));
+        assertEquals(-1, jdbcTemplate.queryForObject("SELECT useful FROM reviews WHERE id = ?", Integer.class,
+                reviewId));
+        assertUsefulMatchesReactions();
+    }
+
+    private void assertUsefulMatchesReactions() {
+        String sqlQuery = "SELECT r.id, r.useful, " +
+                "(SELECT COALESCE(SUM(CASE WHEN u.is_like THEN 1 ELSE -1 END), 0) FROM useful u " +
+                "WHERE u.review_id = r.id) AS score " +
+                "FROM reviews r";
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sqlQuery)) {
+            assertEquals(((Number) row.get("score")).longValue(), ((Number) row.get("useful")).longValue(),
+                    "useful отзыва " + row.get("id"));
+        }
+    }
+
+    // каждый поток выполняет OPERATIONS действий со своей последовательностью случайных чисел
+    private void runConcurrently(IntConsumer operation) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            SplittableRandom random = new SplittableRandom(thread);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    operation.accept(random.nextInt(Integer.MAX_VALUE));
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+    }
+}
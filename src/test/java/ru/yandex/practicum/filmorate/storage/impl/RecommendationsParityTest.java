@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.cache.LikeMatrix;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Рекомендации из матрицы лайков сверяются с прежним SQL-запросом. SQL берёт одного самого похожего
+ * пользователя, а при равенстве сходства - любого, поэтому оба ответа должны входить в набор
+ * допустимых, который матрица считает полным перебором соседей.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class RecommendationsParityTest {
+
+    private static final int USERS = 200;
+    private static final int FILMS = 60;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmLikeDbStorageImpl filmLikeStorage;
+
+    @Autowired
+    private LikeMatrix likeMatrix;
+
+    private List<Long> userIds;
+
+    @BeforeEach
+    void seed() {
+        TestData.clear(jdbcTemplate);
+        userIds = TestData.insertUsers(jdbcTemplate, USERS);
+        List<Long> filmIds = TestData.insertFilms(jdbcTemplate, FILMS, 5);
+
+        // популярность фильмов убывает степенным образом: у первых фильмов сотни лайков, у последних единицы
+        SplittableRandom random = new SplittableRandom(42);
+        for (Long userId : userIds) {
+            int likes = random.nextInt(12);
+            for (int i = 0; i < likes; i++) {
+                double position = Math.pow(random.nextDouble(), 3);
+                filmLikeStorage.addLike(filmIds.get((int) (position * FILMS)), userId);
+            }
+        }
+    }
+
+    @Test
+    void matrixRecommendationsMatchSqlRecommender() {
+        for (Long userId : userIds) {
+            List<Set<Long>> allowed = likeMatrix.recommendationsOfMostSimilar(userId);
+
+            Set<Long> fromSql = filmLikeStorage.getRecommendationsFromDb(userId).stream()
+                    .map(Film::getId)
+                    .collect(Collectors.toSet());
+            Set<Long> fromMatrix = new HashSet<>(likeMatrix.recommend(userId, 1));
+
+            assertTrue(allowed.contains(fromSql),
+                    "SQL-рекомендации пользователя " + userId + ": " + fromSql + ", допустимы " + allowed);
+            assertTrue(allowed.contains(fromMatrix),
+                    "Рекомендации из матрицы пользователя " + userId + ": " + fromMatrix + ", допустимы " + allowed);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package ru.yandex.practicum.filmorate.storage.schema;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.generator.DataGenerator;
+import ru.yandex.practicum.filmorate.storage.metrics.ExecutedStatement;
+import ru.yandex.practicum.filmorate.storage.metrics.SqlStatementCounter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Планы запросов хранилищ на наполненной базе. Сценарий чтения выполняется на данных генератора,
+ * запросы записываются вместе с параметрами и прогоняются через EXPLAIN с теми же значениями.
+ * Фильтрующий запрос (с WHERE), который читает большую таблицу целиком, означает потерянный индекс.
+ * Полные выгрузки без WHERE при загрузке кешей и справочники из десятка строк не проверяются.
+ * Частые чтения по ключу дополнительно выполняются через EXPLAIN ANALYZE: по счётчику scanCount
+ * видно, сколько строк каждой таблицы они прочитали на самом деле, а не только каким индексом.
+ * Сверка рейтинга и рекомендаций с базой включена, чтобы в сценарий попали и эталонные SQL-запросы.
+ */
+@SpringBootTest(properties = {
+        "filmorate.popular.leaderboard-verify=true",
+        "filmorate.recommendations.parity-check=true"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryPlansTest {
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.(\\w+)\\.tableScan");
+
+    // справочники из десятка строк читать целиком дешевле, чем по индексу
+    private static final Set<String> SMALL_TABLES = Set.of("MPA", "GENRES");
+
+    // таблица в плане (без ссылок на её столбцы) и число прочитанных из неё строк
+    private static final Pattern TABLE = Pattern.compile("\"PUBLIC\"\\.\"(\\w+)\"(?!\\.)");
+    private static final Pattern SCAN_COUNT = Pattern.compile("/\\* scanCount: (\\d+) \\*/");
+
+    // чтение по ключу может пройти не больше этой доли строк таблицы
+    private static final int MAX_SCANNED_PERCENT = 10;
+
+    // в маленьких таблицах доля прочитанных строк ни о чём не говорит
+    private static final int MIN_CHECKED_ROWS = 1_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataGenerator dataGenerator;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Autowired
+    private FilmLikeStorage filmLikeStorage;
+
+    @Autowired
+    private FriendshipStorage friendshipStorage;
+
+    @Autowired
+    private ReviewStorage reviewStorage;
+
+    @Autowired
+    private FeedStorage feedStorage;
+
+    @Autowired
+    private TimelineStorage timelineStorage;
+
+    @Autowired
+    private DirectorStorage directorStorage;
+
+    private DataGenerator.Dataset dataset;
+
+    @BeforeAll
+    void seed() {
+        dataset = dataGenerator.generate(DataGenerator.Settings.forUsers(5_000));
+        // статистика по свежим таблицам, чтобы оптимизатор выбирал планы как на рабочей базе
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void filteringQueriesUseIndexes() {
+        // первый проход загружает кеши в памяти, их полные выгрузки в проверку не попадают
+        readScenario();
+        List<ExecutedStatement> statements = SqlStatementCounter.record(this::readScenario);
+
+        Map<String, ExecutedStatement> filtering = new LinkedHashMap<>();
+        for (ExecutedStatement statement : statements) {
+            String sql = statement.sql().strip().toUpperCase(Locale.ROOT);
+            // выборки из MERGE и DELETE (FROM OLD TABLE ...) - не чтение, их план задаёт изменяемая таблица
+            if (sql.startsWith("SELECT") && sql.contains(" WHERE ") && !sql.contains(" TABLE (")) {
+                filtering.putIfAbsent(statement.sql(), statement);
+            }
+        }
+        assertFalse(filtering.isEmpty(), "Сценарий не выполнил ни одного фильтрующего запроса");
+
+        List<String> scans = new ArrayList<>();
+        for (ExecutedStatement statement : filtering.values()) {
+            String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + statement.sql(), String.class,
+                    statement.parameters().toArray()));
+
+            Set<String> tables = new TreeSet<>();
+            Matcher matcher = TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                if (!SMALL_TABLES.contains(matcher.group(1))) {
+                    tables.add(matcher.group(1));
+                }
+            }
+
+            if (!tables.isEmpty()) {
+                scans.add(String.format("таблицы %s читаются целиком в запросе%n%s%nпараметры: %s%nплан:%n%s",
+                        tables, statement.sql(), statement.parameters(), plan));
+            }
+        }
+
+        assertTrue(scans.isEmpty(), String.join("\n\n", scans));
+    }
+
+    @Test
+    void keyLookupsReadFewRows() {
+        keyLookups();
+        List<ExecutedStatement> statements = SqlStatementCounter.record(this::keyLookups);
+
+        Map<String, ExecutedStatement> selects = new LinkedHashMap<>();
+        for (ExecutedStatement statement : statements) {
+            if (statement.sql().strip().toUpperCase(Locale.ROOT).startsWith("SELECT")) {
+                selects.putIfAbsent(statement.sql(), statement);
+            }
+        }
+        assertFalse(selects.isEmpty(), "Чтения по ключу не выполнили ни одного запроса");
+
+        Map<String, Integer> tableRows = new HashMap<>();
+        List<String> heavy = new ArrayList<>();
+        for (ExecutedStatement statement : selects.values()) {
+            String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN ANALYZE " + statement.sql(),
+                    String.class, statement.parameters().toArray()));
+
+            // счётчик относится к последней таблице, упомянутой в плане перед ним
+            Matcher scanCount = SCAN_COUNT.matcher(plan);
+            while (scanCount.find()) {
+                String table = lastTableBefore(plan, scanCount.start());
+                if (table == null || SMALL_TABLES.contains(table)) {
+                    continue;
+                }
+
+                int rows = tableRows.computeIfAbsent(table, name ->
+                        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + name, Integer.class));
+                int scanned = Integer.parseInt(scanCount.group(1));
+                if (rows >= MIN_CHECKED_ROWS && scanned * 100L > (long) rows * MAX_SCANNED_PERCENT) {
+                    heavy.add(String.format("из таблицы %s (%d строк) прочитано %d строк в запросе%n%s%n"
+                            + "параметры: %s%nплан:%n%s", table, rows, scanned, statement.sql(),
+                            statement.parameters(), plan));
+                }
+            }
+        }
+
+        assertTrue(heavy.isEmpty(), String.join("\n\n", heavy));
+    }
+
+    private static String lastTableBefore(String plan, int end) {
+        Matcher matcher = TABLE.matcher(plan).region(0, end);
+        String table = null;
+        while (matcher.find()) {
+            table = matcher.group(1);
+        }
+        return table;
+    }
+
+    // частые чтения по ключу; у редкого фильма мало лайков и отзывов, у первого пользователя - обычная лента
+    private void keyLookups() {
+        long rareFilm = dataset.filmIds()[dataset.filmIds().length - 1];
+        long user = dataset.userIds()[0];
+
+        filmStorage.findById(rareFilm);
+        userStorage.findById(user);
+        filmLikeStorage.getLikesById(rareFilm);
+        friendshipStorage.getFriends(user);
+        reviewStorage.getReviewById(dataset.reviewIds()[0]);
+        reviewStorage.getReviewByFilm(rareFilm, 10);
+        feedStorage.getUserFeedPage(user, 0, 0, Long.MAX_VALUE, 20);
+        timelineStorage.getTimeline(user, Long.MAX_VALUE, Long.MAX_VALUE, 20);
+    }
+
+    // типичные чтения приложения с параметрами из сгенерированных данных
+    private void readScenario() {
+        long film = dataset.filmIds()[0];
+        long rareFilm = dataset.filmIds()[dataset.filmIds().length - 1];
+        long user = dataset.userIds()[0];
+        long otherUser = dataset.userIds()[dataset.userIds().length / 2];
+        long genre = dataset.genreIds()[0];
+        long review = dataset.reviewIds()[0];
+
+        filmStorage.findById(film);
+        filmStorage.findPage(film, 50);
+        long director = directorStorage.getDirectorsByFilm(film).get(0).getId();
+        directorStorage.getById(director);
+        filmStorage.getFilmsByDirector(director, "year");
+        filmStorage.getFilmsByDirector(director, "likes");
+        filmStorage.getFilmsByDirectorAndOrByTitle("фильм 1", "title,director");
+
+        userStorage.findById(user);
+        userStorage.findPage(user, 50);
+        userStorage.findByIds(List.of(user, otherUser));
+
+        filmLikeStorage.getLikesById(film);
+        filmLikeStorage.getPopularFilms(10L, null, null);
+        filmLikeStorage.getPopularFilms(10L, genre, null);
+        filmLikeStorage.getPopularFilms(10L, null, 2000L);
+        filmLikeStorage.getPopularFilms(10L, genre, 2000L);
+        filmLikeStorage.getCommonFilms(user, otherUser);
+        filmLikeStorage.getRecommendations(user);
+        filmLikeStorage.getRecommendations(otherUser);
+
+        friendshipStorage.getFriends(user);
+        friendshipStorage.getCommonFriends(user, otherUser);
+
+        reviewStorage.getReviewById(review);
+        reviewStorage.getReviewByFilm(film, 10);
+        reviewStorage.getReviewByFilm(rareFilm, 10);
+        reviewStorage.getAllReviews(10);
+
+        feedStorage.getUserFeed(user);
+        feedStorage.getUserFeedPage(user, 0, 0, Long.MAX_VALUE, 20);
+        timelineStorage.getTimeline(user, Long.MAX_VALUE, Long.MAX_VALUE, 20);
+        timelineStorage.getTimeline(otherUser, Long.MAX_VALUE, Long.MAX_VALUE, 20);
+    }
+}